@@ -0,0 +1,156 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the hot paths of the <code>GameBoard</code> on standard and torus boards of several sizes and fill
+ * levels. The boards are filled with random pieces, which do not complete any line.
+ * @author Unknown6656
+ * @version 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark
+{
+    /**
+     * Indicates, whether the game board is a torus
+     */
+    @Param({ "false", "true" })
+    public boolean torus;
+    /**
+     * The game board size
+     */
+    @Param({ "4", "6", "8" })
+    public int size;
+    /**
+     * The percentage of occupied cells
+     */
+    @Param({ "0", "25", "50", "75" })
+    public int fill;
+    private GameBoard board;
+    private int[] free; // free cells
+    private int freeCount;
+    private int next;
+
+
+    /**
+     * Creates and fills the game board
+     */
+    @Setup
+    public void setup()
+    {
+        this.board = new GameBoard(this.size, this.torus);
+        this.free = new int[this.size * this.size];
+        this.freeCount = fill(this.board, this.fill, this.free, new Random(this.size * 100 + this.fill));
+    }
+
+    /**
+     * Places a piece on a free cell (see <code>GameBoard.placePiece</code>) and removes it again. The piece is put
+     * back into the bag, so that every invocation takes it from a full bag.
+     * @return The return code of <code>placePiece</code>
+     */
+    @Benchmark
+    public byte placePiece()
+    {
+        if (this.freeCount == 0)
+            return 3;
+
+        int cell = this.free[this.next++ % this.freeCount];
+        int piece = this.next & 0x0f;
+        byte result = this.board.placePiece((byte) piece, cell % this.size, cell / this.size);
+
+        this.board.take(cell);
+        this.board.returnToBag(piece);
+
+        return result;
+    }
+
+    /**
+     * Checks a cell for a win (see <code>GameBoard.getWinner</code>)
+     * @return Winner
+     */
+    @Benchmark
+    public boolean getWinner()
+    {
+        int cell = this.next++ % (this.size * this.size);
+
+        return this.board.getWinner(cell % this.size, cell / this.size);
+    }
+
+    /**
+     * Iterates the bag (see <code>GameBoard.getBag</code>)
+     * @param hole Blackhole consuming the pieces
+     */
+    @Benchmark
+    public void getBag(Blackhole hole)
+    {
+        for (Piece p : this.board.getBag())
+            hole.consume(p);
+    }
+
+    /**
+     * Prints the complete field (see <code>GameBoard.print</code>)
+     * @return String representation
+     */
+    @Benchmark
+    public String print()
+    {
+        return this.board.print();
+    }
+
+    /**
+     * Places random pieces on the given board, until the given percentage of cells is occupied. The placements do
+     * not touch the bag and do not complete any line.
+     * @param board Empty game board
+     * @param percent Percentage of occupied cells
+     * @param free Output array receiving the remaining free cells
+     * @param random Random number generator
+     * @return Number of free cells
+     */
+    static int fill(GameBoard board, int percent, int[] free, Random random)
+    {
+        int cells = board.getSize() * board.getSize();
+        int target = cells * percent / 100;
+        int count = 0;
+
+        for (int placed = 0, tries = 0; (placed < target) && (tries < cells * 0x40); tries++)
+        {
+            int cell = random.nextInt(cells);
+            int piece = random.nextInt(0x10);
+
+            if (!board.isOccupied(cell) && !board.getTracker().wouldWin(cell, piece))
+            {
+                board.put(cell, piece);
+                placed++;
+            }
+        }
+
+        for (int c = 0; c < cells; c++)
+            if (!board.isOccupied(c))
+                free[count++] = c;
+
+        return count;
+    }
+}
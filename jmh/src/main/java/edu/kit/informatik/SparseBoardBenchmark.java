@@ -0,0 +1,88 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the placement and win detection of the <code>SparseBoard</code> for several board sizes and win
+ * lengths. The board contains a cross of almost complete lines (all pieces share one attribute), whose centre is
+ * occupied and freed again by every invocation, so the win detection has to walk the full win length.
+ * @author Unknown6656
+ * @version 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseBoardBenchmark
+{
+    /**
+     * Indicates, whether the game board is a torus
+     */
+    @Param({ "false", "true" })
+    public boolean torus;
+    /**
+     * The game board size
+     */
+    @Param({ "16", "1000", "100000" })
+    public int size;
+    /**
+     * The win length
+     */
+    @Param({ "4", "8", "16" })
+    public int length;
+    private SparseBoard board;
+    private int centre;
+
+
+    /**
+     * Creates the board and places the lines through the centre
+     */
+    @Setup
+    public void setup()
+    {
+        this.board = new SparseBoard(this.size, this.torus, this.length);
+        this.centre = this.size / 2;
+
+        for (int i = 1; i < this.length / 2; i++)
+        {
+            this.board.put(this.centre - i, this.centre, 0x01);
+            this.board.put(this.centre + i, this.centre, 0x03);
+            this.board.put(this.centre, this.centre - i, 0x05);
+            this.board.put(this.centre, this.centre + i, 0x07);
+            this.board.put(this.centre - i, this.centre - i, 0x09);
+            this.board.put(this.centre + i, this.centre + i, 0x0b);
+        }
+    }
+
+    /**
+     * Places a piece on the centre and removes it again
+     * @return true, if the placement wins
+     */
+    @Benchmark
+    public boolean placeAndTake()
+    {
+        boolean win = this.board.put(this.centre, this.centre, 0x0d);
+
+        this.board.take(this.centre, this.centre);
+
+        return win;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the command loop by replaying a transcript: Every session of the transcript is executed
+ * by a new <code>Session</code>, whose responses are discarded. The primary score counts transcript replays, the
+ * secondary score <code>commands</code> counts the executed command lines.<br/>
+ * The transcript is either generated (random games with the seed 0) or read from the file given by the parameter
+ * <code>transcript</code>, in which the commands `exit` and `quit` end a session.
+ * @author Unknown6656
+ * @version 1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranscriptBenchmark
+{
+    private static final int SESSIONS = 0x40;
+    private static final int COMMANDS = 48;
+    private static final Charset CHARSET = Charset.defaultCharset();
+    /**
+     * Indicates, whether the game boards are tori
+     */
+    @Param({ "false", "true" })
+    public boolean torus;
+    /**
+     * The path of a recorded transcript (empty := a generated transcript is used)
+     */
+    @Param("")
+    public String transcript;
+    private byte[] bytes;
+    private String[] lines;
+
+
+    /**
+     * Generates or reads the transcript
+     * @throws IOException Thrown, if the transcript file could not be read
+     */
+    @Setup
+    public void setup() throws IOException
+    {
+        List<String> all = this.transcript.isEmpty() ? generate(new Random(0))
+                : Files.readAllLines(Paths.get(this.transcript), CHARSET);
+        StringBuilder sb = new StringBuilder();
+
+        for (String line : all)
+            sb.append(line)
+              .append('\n');
+
+        this.bytes = sb.toString().getBytes(CHARSET);
+        this.lines = all.toArray(new String[all.size()]);
+    }
+
+    /**
+     * Replays the transcript like the console application: The lines are read as bytes by a <code>LineReader</code>
+     * and the responses are encoded by a <code>BufferedOutput</code>
+     * @param counters Counts the executed commands
+     * @throws IOException Never thrown
+     */
+    @Benchmark
+    public void replayConsole(Counters counters) throws IOException
+    {
+        BufferedOutput output = new BufferedOutput(NullStream.INSTANCE);
+        LineReader reader = new LineReader(new ByteArrayInputStream(this.bytes));
+        Session session = new Session(this.torus, output);
+
+        while (reader.next())
+            if (!session.execute(reader.buffer(), reader.start(), reader.end(), CHARSET))
+                session = new Session(this.torus, output);
+
+        output.flush();
+        counters.commands += this.lines.length;
+    }
+
+    /**
+     * Replays the transcript line by line with the string-based command parser
+     * @param counters Counts the executed commands
+     */
+    @Benchmark
+    public void replayStrings(Counters counters)
+    {
+        BufferedOutput output = new BufferedOutput(NullStream.INSTANCE);
+        Session session = new Session(this.torus, output);
+
+        for (String line : this.lines)
+            if (!session.execute(line))
+                session = new Session(this.torus, output);
+
+        output.flush();
+        counters.commands += this.lines.length;
+    }
+
+    // generates random games, which contain valid and invalid commands
+    private List<String> generate(Random random)
+    {
+        List<String> result = new ArrayList<String>();
+        int range = this.torus ? 10 : 7; // includes some invalid coordinates
+
+        for (int s = 0; s < SESSIONS; s++)
+        {
+            for (int i = 0; i < COMMANDS; i++)
+            {
+                int kind = random.nextInt(20);
+
+                if (kind < 9)
+                    result.add("select " + random.nextInt(0x11));
+                else if (kind < 18)
+                    result.add("place " + (random.nextInt(range) - 1) + ";" + (random.nextInt(range) - 1));
+                else if (kind < 19)
+                    result.add((random.nextBoolean() ? "rowprint " : "colprint ") + random.nextInt(range));
+                else
+                    result.add("bag");
+            }
+
+            result.add("quit");
+        }
+
+        return result;
+    }
+
+    /**
+     * The executed command lines per iteration
+     * @author Unknown6656
+     * @version 1
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters
+    {
+        /**
+         * Number of executed command lines
+         */
+        public long commands;
+
+
+        /**
+         * Resets the counter before every iteration
+         */
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            this.commands = 0;
+        }
+    }
+
+    // an output stream discarding everything
+    private static final class NullStream extends OutputStream
+    {
+        static final NullStream INSTANCE = new NullStream();
+
+
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+        }
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Analyses a binary game archive (see <code>GameRecordReader</code>) in parallel: The calling thread splits the
+ * archive at record boundaries into chunks of about <code>CHUNK</code> bytes, which are replayed through a
+ * <code>GameBoard</code> by one worker per thread. Every worker reads its chunks directly from the mapped file and
+ * accumulates its own <code>Statistics</code>, which are merged after the whole archive has been processed, so the
+ * heap usage does not depend on the archive size.
+ * @author Unknown6656
+ * @version 1
+ */
+public class ArchiveAnalyzer
+{
+    /**
+     * The approximate size of a chunk in bytes
+     */
+    public static final long CHUNK = 0x1000000;
+    private static final long[] END = new long[0]; // marks the end of the chunk queue
+    private final int threads;
+    private final ExecutorService executor;
+
+
+    /**
+     * Creates a new analyzer with one worker thread per available processor
+     */
+    public ArchiveAnalyzer()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new analyzer with the given number of worker threads
+     * @param threads Number of worker threads
+     */
+    public ArchiveAnalyzer(int threads)
+    {
+        super();
+
+        if (threads < 1)
+            throw new IllegalArgumentException("The thread count must be positive.");
+
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "archive-worker");
+
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+    }
+
+    /**
+     * The analyzer's entry point
+     * @param args Command line arguments: The archive file and an optional thread count (separated by spaces)
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 1)
+        {
+            Final02.out("Error, Expected the archive file and an optional thread count as arguments.");
+
+            System.exit(1);
+            return;
+        }
+
+        ArchiveAnalyzer analyzer = null;
+
+        try
+        {
+            analyzer = args.length > 1 ? new ArchiveAnalyzer(Integer.parseInt(args[1])) : new ArchiveAnalyzer();
+
+            long start = System.nanoTime();
+            Statistics stats = analyzer.analyze(Paths.get(args[0]));
+            long millis = Math.max((System.nanoTime() - start) / 1000000, 1);
+
+            stats.print();
+
+            Final02.out("%d ms, %d placements/s, %d threads", millis, stats.getPlacements() * 1000 / millis,
+                        analyzer.getThreads());
+        }
+        catch (NumberFormatException ex)
+        {
+            Final02.out("Error, The thread count could not be parsed as an integer value.");
+
+            System.exit(1);
+        }
+        catch (IllegalArgumentException | IOException ex)
+        {
+            Final02.out("Error, %s", ex.getMessage());
+
+            System.exit(1);
+        }
+        finally
+        {
+            if (analyzer != null)
+                analyzer.shutdown();
+        }
+    }
+
+    /**
+     * Analyses the given archive
+     * @param path Archive file path
+     * @return Merged statistics of all games
+     * @throws IOException Thrown, if the archive could not be read or is truncated
+     */
+    public Statistics analyze(final Path path) throws IOException
+    {
+        final BlockingQueue<long[]> chunks = new ArrayBlockingQueue<long[]>(this.threads * 4);
+        List<Future<Statistics>> futures = new ArrayList<Future<Statistics>>(this.threads);
+
+        for (int i = 0; i < this.threads; i++)
+            futures.add(this.executor.submit(new Callable<Statistics>()
+            {
+                @Override
+                public Statistics call() throws IOException, InterruptedException
+                {
+                    return new Worker(path, chunks).run();
+                }
+            }));
+
+        // only the record headers are touched by the split, the workers read the records while it continues
+        try (GameRecordReader reader = new GameRecordReader(path))
+        {
+            long start = GameRecordReader.HEADER;
+
+            while (reader.next())
+                if (reader.getOffset() - start >= CHUNK)
+                {
+                    put(chunks, new long[] { start, reader.getOffset() });
+
+                    start = reader.getOffset();
+                }
+
+            put(chunks, new long[] { start, -1 });
+        }
+        finally
+        {
+            for (int i = 0; i < this.threads; i++)
+                put(chunks, END);
+        }
+
+        Statistics res = new Statistics();
+
+        for (Future<Statistics> future : futures)
+            res.merge(await(future));
+
+        return res;
+    }
+
+    /**
+     * Stops all worker threads
+     */
+    public void shutdown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Returns the number of worker threads
+     * @return Thread count
+     */
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    // enqueues the given chunk
+    private static void put(BlockingQueue<long[]> chunks, long[] chunk)
+    {
+        try
+        {
+            chunks.put(chunk);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // waits for the given worker's result
+    private static Statistics await(Future<Statistics> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(ex);
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * The statistics of a set of games
+     * @author Unknown6656
+     * @version 1
+     */
+    public static final class Statistics
+    {
+        /**
+         * The names of the attributes, which can decide a game (bit i := attribute i set, bit i + 4 := cleared)
+         */
+        public static final String[] ATTRIBUTES =
+        {
+            "massive", "large", "round", "white", "hollow", "small", "angular", "black"
+        };
+        private static final String[] MODES = { "standard", "torus" };
+        private final long[][] results = new long[2][4]; // mode --> result --> games
+        private final long[] attributes = new long[8];
+        private final long[] firstGames = new long[0x10000]; // first placement --> games
+        private final long[][] firstResults = new long[0x10000][]; // first placement --> result --> games
+        private long games;
+        private long placements;
+        private long invalid;
+        private long winRounds;
+
+
+        /**
+         * Creates new empty statistics
+         */
+        public Statistics()
+        {
+            super();
+        }
+
+        /**
+         * Adds the given statistics to the current ones
+         * @param other Statistics to be added
+         */
+        public void merge(Statistics other)
+        {
+            for (int m = 0; m < 2; m++)
+                for (int r = 0; r < 4; r++)
+                    this.results[m][r] += other.results[m][r];
+
+            for (int a = 0; a < 8; a++)
+                this.attributes[a] += other.attributes[a];
+
+            for (int p = 0; p < 0x10000; p++)
+                if (other.firstGames[p] != 0)
+                {
+                    this.firstGames[p] += other.firstGames[p];
+
+                    for (int r = 0; r < 4; r++)
+                        firstResults(p)[r] += other.firstResults[p][r];
+                }
+
+            this.games += other.games;
+            this.placements += other.placements;
+            this.invalid += other.invalid;
+            this.winRounds += other.winRounds;
+        }
+
+        /**
+         * Returns the number of analysed games (including the invalid ones)
+         * @return Game count
+         */
+        public long getGames()
+        {
+            return this.games;
+        }
+
+        /**
+         * Returns the number of replayed placements
+         * @return Placement count
+         */
+        public long getPlacements()
+        {
+            return this.placements;
+        }
+
+        /**
+         * Returns the number of games, which could not be replayed or whose recorded result does not match the replay
+         * @return Game count
+         */
+        public long getInvalid()
+        {
+            return this.invalid;
+        }
+
+        /**
+         * Returns the number of valid games with the given mode and result
+         * @param torus Indicates, whether the games have been played on a torus
+         * @param result Result (see <code>GameRecordReader.RESULT_*</code>)
+         * @return Game count
+         */
+        public long getResults(boolean torus, int result)
+        {
+            return this.results[torus ? 1 : 0][result];
+        }
+
+        /**
+         * Returns the number of won games, which have been decided by the given attribute (a single win can be
+         * decided by more than one attribute)
+         * @param attribute Attribute index (see <code>ATTRIBUTES</code>)
+         * @return Game count
+         */
+        public long getAttribute(int attribute)
+        {
+            return this.attributes[attribute];
+        }
+
+        /**
+         * Returns the average round, in which the games have been won (the round printed by a winning placement)
+         * @return Average round or 0, if no game has been won
+         */
+        public double getAverageWinRound()
+        {
+            long wins = 0;
+
+            for (long[] res : this.results)
+                wins += res[GameRecordReader.RESULT_FIRST] + res[GameRecordReader.RESULT_SECOND];
+
+            return wins == 0 ? 0 : (double) this.winRounds / wins;
+        }
+
+        /**
+         * Prints the statistics
+         */
+        public void print()
+        {
+            Final02.out("%d games, %d placements, %d invalid", this.games, this.placements, this.invalid);
+
+            for (int m = 0; m < 2; m++)
+            {
+                long[] res = this.results[m];
+
+                Final02.out("%s: %d games, first %s, second %s, draw %s, unfinished %s", MODES[m],
+                            res[0] + res[1] + res[2] + res[3], percent(res, GameRecordReader.RESULT_FIRST),
+                            percent(res, GameRecordReader.RESULT_SECOND), percent(res, GameRecordReader.RESULT_DRAW),
+                            percent(res, GameRecordReader.RESULT_NONE));
+            }
+
+            Final02.out("average winning round: %.2f", getAverageWinRound());
+
+            for (int a = 0; a < 8; a++)
+                Final02.out("decided by %s: %d", ATTRIBUTES[a], this.attributes[a]);
+
+            // the first placements are printed from the most to the least frequent one
+            List<Integer> order = new ArrayList<Integer>();
+
+            for (int p = 0; p < 0x10000; p++)
+                if (this.firstGames[p] != 0)
+                    order.add(p);
+
+            Integer[] sorted = order.toArray(new Integer[order.size()]);
+
+            Arrays.sort(sorted, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(Integer a, Integer b)
+                {
+                    return Long.compare(Statistics.this.firstGames[b], Statistics.this.firstGames[a]);
+                }
+            });
+
+            for (int p : sorted)
+                Final02.out("first move cell %d piece %d: %d games, first %s, second %s, draw %s", p >>> 4, p & 0x0f,
+                            this.firstGames[p], percent(this.firstResults[p], GameRecordReader.RESULT_FIRST),
+                            percent(this.firstResults[p], GameRecordReader.RESULT_SECOND),
+                            percent(this.firstResults[p], GameRecordReader.RESULT_DRAW));
+        }
+
+        // returns the result counters of the given first placement
+        private long[] firstResults(int placement)
+        {
+            if (this.firstResults[placement] == null)
+                this.firstResults[placement] = new long[4];
+
+            return this.firstResults[placement];
+        }
+
+        // formats the share of the given result
+        private static String percent(long[] results, int result)
+        {
+            long total = results[0] + results[1] + results[2] + results[3];
+
+            return String.format("%.1f%%", total == 0 ? 0 : results[result] * 100.0 / total);
+        }
+    }
+
+    // replays the chunks of the queue until the end marker has been taken
+    private static final class Worker
+    {
+        private final Path path;
+        private final BlockingQueue<long[]> chunks;
+        private final Statistics stats = new Statistics();
+        private final Map<Integer, GameBoard> boards = new HashMap<Integer, GameBoard>();
+
+
+        Worker(Path path, BlockingQueue<long[]> chunks)
+        {
+            super();
+
+            this.path = path;
+            this.chunks = chunks;
+        }
+
+        Statistics run() throws IOException, InterruptedException
+        {
+            Throwable failure = null;
+
+            // the queue is drained after any failure (not only an I/O error), so that the splitting thread never
+            // blocks on the full queue
+            for (long[] chunk = this.chunks.take(); chunk != END; chunk = this.chunks.take())
+                if (failure == null)
+                    try (GameRecordReader reader = new GameRecordReader(this.path, chunk[0], chunk[1]))
+                    {
+                        while (reader.next())
+                            replay(reader);
+                    }
+                    catch (Throwable ex)
+                    {
+                        failure = ex;
+                    }
+
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            else if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            else if (failure instanceof Error)
+                throw (Error) failure;
+
+            return this.stats;
+        }
+
+        // replays the current record and adds it to the statistics
+        private void replay(GameRecordReader reader)
+        {
+            int count = reader.getPlacementCount();
+            int replayed = 0;
+            int result = GameRecordReader.RESULT_NONE;
+            GameBoard board = board(reader.getSize(), reader.isTorus());
+            int cells = reader.getSize() * reader.getSize();
+
+            this.stats.games++;
+
+            if (board == null)
+            {
+                this.stats.invalid++;
+
+                return;
+            }
+
+            for (int i = 0; (i < count) && (result == GameRecordReader.RESULT_NONE); i++)
+            {
+                int placement = reader.getPlacement(i);
+                int cell = placement >>> 4;
+                // a cell outside of the board is corrupt (it would be wrapped around on a torus)
+                byte code = cell < cells ? board.makeMove(placement & 0x0f, cell % board.getSize(),
+                                                          cell / board.getSize()) : (byte) -1;
+
+                if ((code == 0) || (code == 4) || (code == 5))
+                    replayed++;
+
+                if (code == 4)
+                {
+                    result = i % 2 == 0 ? GameRecordReader.RESULT_FIRST : GameRecordReader.RESULT_SECOND;
+
+                    this.stats.winRounds += board.getRound();
+                    countAttributes(board, cell);
+                }
+                else if (code == 5)
+                    result = GameRecordReader.RESULT_DRAW;
+                else if (code != 0)
+                    result = -1;
+            }
+
+            this.stats.placements += replayed;
+
+            while (board.unmakeMove())
+            {
+                // restores the empty board in constant time per move
+            }
+
+            if ((result < 0) || (result != reader.getResult()) || (replayed != count))
+                this.stats.invalid++;
+            else
+            {
+                this.stats.results[reader.isTorus() ? 1 : 0][result]++;
+
+                if (count > 0)
+                {
+                    int first = reader.getPlacement(0);
+
+                    this.stats.firstGames[first]++;
+                    this.stats.firstResults(first)[result]++;
+                }
+            }
+        }
+
+        // counts the attributes shared by the completed windows through the given cell
+        private void countAttributes(GameBoard board, int cell)
+        {
+            WinTracker tracker = board.getTracker();
+            Geometry geometry = board.getGeometry();
+            int[] cellWindows = geometry.cellWindows();
+            int mask = 0;
+
+            for (int i = geometry.cellStart()[cell], e = geometry.cellStart()[cell + 1]; i < e; i++)
+                if (tracker.count(cellWindows[i]) == Geometry.LENGTH)
+                    mask |= tracker.andSet(cellWindows[i]) | (tracker.andClear(cellWindows[i]) << 4);
+
+            for (int a = 0; a < 8; a++)
+                if ((mask & (1 << a)) != 0)
+                    this.stats.attributes[a]++;
+        }
+
+        // returns the (empty) board of the given geometry or null, if it is invalid
+        private GameBoard board(int size, boolean torus)
+        {
+            Integer key = (size << 1) | (torus ? 1 : 0);
+            GameBoard res = this.boards.get(key);
+
+            if ((res == null) && (size > 0) && (size <= 0x40)) // the cell index of a placement has 12 bits
+            {
+                res = new GameBoard(size, torus);
+                this.boards.put(key, res);
+            }
+
+            return res;
+        }
+    }
+}
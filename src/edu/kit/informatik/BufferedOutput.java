@@ -0,0 +1,106 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Collects response lines in a byte buffer and writes them to the underlying stream in batches.<br/>
+ * The output is identical to <code>Terminal.printLine</code> (default charset and line separator), but it only
+ * reaches the stream when the buffer is full or <code>flush</code> is called.
+ * @author Unknown6656
+ * @version 1
+ */
+public class BufferedOutput implements Output
+{
+    private final OutputStream out;
+    private final Charset charset;
+    private final byte[] separator;
+    private final byte[] buffer;
+    private int length;
+
+
+    /**
+     * Creates a new output with the default charset and line separator
+     * @param out Underlying output stream
+     */
+    public BufferedOutput(OutputStream out)
+    {
+        this(out, Charset.defaultCharset(), System.getProperty("line.separator"));
+    }
+
+    /**
+     * Creates a new output
+     * @param out Underlying output stream
+     * @param charset Charset of the responses
+     * @param separator Line separator
+     */
+    public BufferedOutput(OutputStream out, Charset charset, String separator)
+    {
+        super();
+
+        this.out = out;
+        this.charset = charset;
+        this.separator = separator.getBytes(charset);
+        this.buffer = new byte[0x10000];
+    }
+
+    @Override
+    public void printLine(CharSequence line)
+    {
+        int count = line.length();
+
+        for (int i = 0; i < count; i++)
+            if (line.charAt(i) >= 0x80) // only ASCII lines are copied directly
+            {
+                write(line.toString().getBytes(this.charset));
+                write(this.separator);
+
+                return;
+            }
+
+        for (int i = 0; i < count; i++)
+        {
+            if (this.length == this.buffer.length)
+                flush();
+
+            this.buffer[this.length++] = (byte) line.charAt(i);
+        }
+
+        write(this.separator);
+    }
+
+    /**
+     * Writes all buffered responses to the underlying stream
+     */
+    public void flush()
+    {
+        try
+        {
+            this.out.write(this.buffer, 0, this.length);
+            this.out.flush();
+        }
+        catch (IOException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+
+        this.length = 0;
+    }
+
+    // appends the given bytes to the buffer
+    private void write(byte[] bytes)
+    {
+        for (byte b : bytes)
+        {
+            if (this.length == this.buffer.length)
+                flush();
+
+            this.buffer[this.length++] = b;
+        }
+    }
+}
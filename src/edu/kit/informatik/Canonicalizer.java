@@ -0,0 +1,280 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+/**
+ * Maps game board positions to a canonical key, which is identical for all equivalent positions.<br/>
+ * Two positions are equivalent, if they can be transformed into each other by any combination of
+ * <ul>
+ * <li>the 8 symmetries of the square board (rotations and reflections),</li>
+ * <li>the translations of a torus board,</li>
+ * <li>the 24 permutations of the four attribute bits of the pieces and</li>
+ * <li>the 16 complements (XOR-masks) of the attribute bits.</li>
+ * </ul>
+ * The canonical representative is the minimum of all transformed positions, compared by
+ * occupancy (maximal first), the piece values in cell order and the selected piece.<br/>
+ * Instances hold scratch buffers and must not be shared between threads. Boards with more than 64 cells are not
+ * supported.
+ * @author Unknown6656
+ * @version 1
+ */
+public class Canonicalizer
+{
+    private static final int[][] PERMUTATIONS = new int[24][0x10]; // permutation --> value --> permuted value
+    private static final long MIX = 0x9e3779b97f4a7c15L;
+    private final Geometry geometry;
+    private final int size;
+    private final int cells;
+    private final boolean torus;
+    private final int[][] maps; // board symmetry --> source cell --> target cell
+    private final int[] translations; // translation (dy * size + dx) * cells + cell --> translated cell
+    private final int[] values = new int[64]; // scratch: target cell --> source value
+    private final long[] candidates; // scratch: [symmetry:16][translation:16] of all maximal occupancies
+    private final int[] cellBuffer = new int[0x10];
+    private final long[] result = new long[3];
+
+
+    static
+    {
+        int p = 0;
+
+        for (int a = 0; a < 4; a++)
+            for (int b = 0; b < 4; b++)
+                for (int c = 0; c < 4; c++)
+                {
+                    int d = 6 - a - b - c;
+
+                    if ((a == b) || (a == c) || (b == c) || (d < 0) || (d > 3) || (d == a) || (d == b) || (d == c))
+                        continue;
+
+                    int[] src = { a, b, c, d };
+
+                    for (int v = 0x00; v <= 0x0f; v++)
+                        for (int bit = 0; bit < 4; bit++)
+                            if ((v & (1 << src[bit])) != 0)
+                                PERMUTATIONS[p][v] |= 1 << bit;
+
+                    p++;
+                }
+    }
+
+    /**
+     * Creates a new canonicalizer for the given board geometry
+     * @param geometry Game board geometry
+     */
+    public Canonicalizer(Geometry geometry)
+    {
+        super();
+
+        this.geometry = geometry;
+        this.size = geometry.getSize();
+        this.cells = geometry.cells();
+        this.torus = geometry.isTorus();
+
+        if (this.cells > 64)
+            throw new IllegalArgumentException("Boards with more than 64 cells cannot be canonicalized.");
+
+        this.maps = new int[8][this.cells];
+        this.candidates = new long[8 * this.cells];
+
+        int n = this.size - 1;
+
+        for (int y = 0, c = 0; y < size; y++)
+            for (int x = 0; x < size; x++, c++)
+            {
+                int[][] xy = { { x, y }, { n - x, y }, { x, n - y }, { n - x, n - y },
+                               { y, x }, { n - y, x }, { y, n - x }, { n - y, n - x } };
+
+                for (int s = 0; s < 8; s++)
+                    this.maps[s][c] = xy[s][1] * size + xy[s][0];
+            }
+
+        this.translations = new int[this.torus ? this.cells * this.cells : 0];
+
+        for (int t = 0; t < this.translations.length; t++)
+        {
+            int shift = t / this.cells;
+            int cell = t % this.cells;
+
+            this.translations[t] = ((cell / size + shift / size) % size) * size + (cell % size + shift % size) % size;
+        }
+    }
+
+    /**
+     * Returns the board geometry of the canonicalizer
+     * @return Game board geometry
+     */
+    public Geometry getGeometry()
+    {
+        return this.geometry;
+    }
+
+    /**
+     * Returns the 64-bit canonical key of the given position (a hash of the canonical representative)
+     * @param board Game board
+     * @return Canonical key
+     */
+    public long key(GameBoard board)
+    {
+        Piece sel = board.getSelected();
+
+        return key(board, sel == null ? -1 : sel.value());
+    }
+
+    /**
+     * Returns the 64-bit canonical key of the given board with the given selected piece (used by search engines,
+     * which do not update the board's selection)
+     * @param board Game board
+     * @param selected Selected piece or -1
+     * @return Canonical key
+     */
+    long key(GameBoard board, int selected)
+    {
+        long[] res = canonicalize(board, selected, this.result);
+        long h = res[0] * MIX;
+
+        h = (h ^ (h >>> 29) ^ res[1]) * MIX;
+        h = (h ^ (h >>> 32) ^ res[2]) * MIX;
+
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Computes the canonical representative of the given position
+     * @param board Game board
+     * @param out Output buffer with a length of at least 3, which receives the representative's occupancy bit mask
+     * (cell index := bit index), its piece values in cell order (first piece := most significant nibble) and its
+     * selected piece (or -1)
+     * @return The output buffer
+     */
+    public long[] canonicalize(GameBoard board, long[] out)
+    {
+        Piece sel = board.getSelected();
+
+        return canonicalize(board, sel == null ? -1 : sel.value(), out);
+    }
+
+    // computes the canonical representative of the given board with the given selected piece
+    private long[] canonicalize(GameBoard board, int selected, long[] out)
+    {
+        long occ = board.occupiedWord(0);
+        int count = 0;
+
+        for (long rest = occ; rest != 0L; rest &= rest - 1)
+            this.cellBuffer[count++] = Long.numberOfTrailingZeros(rest);
+
+        // 1. collect all board symmetries, which lead to the maximal occupancy
+        long best = 0L;
+        int found = 0;
+
+        for (int s = 0; s < 8; s++)
+            if (this.torus && (count > 0))
+                for (int i = 0; i < count; i++)
+                {
+                    // only translations moving an occupied cell onto the last cell can maximize the occupancy
+                    int target = this.maps[s][this.cellBuffer[i]];
+                    int shift = (this.cells - 1) - target; // (n - 1 - y) * n + (n - 1 - x)
+                    long t = transform(s, shift, count);
+                    int cmp = compareUnsigned(t, best);
+
+                    if (cmp > 0)
+                    {
+                        best = t;
+                        found = 0;
+                    }
+
+                    if (cmp >= 0)
+                        this.candidates[found++] = ((long) s << 16) | shift;
+                }
+            else
+            {
+                long t = transform(s, 0, count);
+                int cmp = compareUnsigned(t, best);
+
+                if ((cmp > 0) || (s == 0))
+                {
+                    best = t;
+                    found = 0;
+                }
+
+                if (cmp >= 0)
+                    this.candidates[found++] = (long) s << 16;
+            }
+
+        // 2. find the minimal value sequence of these symmetries under all attribute transformations
+        long bestValues = -1L;
+        int bestSelected = Integer.MAX_VALUE;
+
+        for (int i = 0; i < found; i++)
+        {
+            int s = (int) (this.candidates[i] >>> 16);
+            int shift = (int) this.candidates[i] & 0xffff;
+
+            for (int k = 0; k < count; k++)
+            {
+                int src = this.cellBuffer[k];
+
+                this.values[translate(this.maps[s][src], shift)] = board.valueAt(src);
+            }
+
+            for (int[] perm : PERMUTATIONS)
+            {
+                long vals = 0L;
+                int xor = -1;
+
+                for (long rest = best; rest != 0L; rest &= rest - 1)
+                {
+                    int v = perm[this.values[Long.numberOfTrailingZeros(rest)]];
+
+                    if (xor < 0)
+                        xor = v;
+
+                    vals = (vals << 4) | (v ^ xor);
+                }
+
+                if (xor < 0) // empty board: the selected piece determines the complement
+                    xor = selected < 0 ? 0 : perm[selected];
+
+                int sv = selected < 0 ? -1 : perm[selected] ^ xor;
+                int cmp = compareUnsigned(vals, bestValues);
+
+                if ((cmp < 0) || ((cmp == 0) && (sv < bestSelected)))
+                {
+                    bestValues = vals;
+                    bestSelected = sv;
+                }
+            }
+        }
+
+        out[0] = best;
+        out[1] = bestValues;
+        out[2] = bestSelected;
+
+        return out;
+    }
+
+    // compares the given values as unsigned numbers
+    private static int compareUnsigned(long a, long b)
+    {
+        return Long.compare(a + Long.MIN_VALUE, b + Long.MIN_VALUE);
+    }
+
+    // returns the occupancy after applying the given symmetry and translation to all occupied cells
+    private long transform(int symmetry, int shift, int count)
+    {
+        long res = 0L;
+
+        for (int k = 0; k < count; k++)
+            res |= 1L << translate(this.maps[symmetry][this.cellBuffer[k]], shift);
+
+        return res;
+    }
+
+    // translates the given cell by the given offset (dy * size + dx) on the torus
+    private int translate(int cell, int shift)
+    {
+        return shift == 0 ? cell : this.translations[shift * this.cells + cell];
+    }
+}
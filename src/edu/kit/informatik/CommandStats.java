@@ -0,0 +1,120 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+/**
+ * The latency histograms of the game commands and of the win check of one session (see the command `stats`).<br/>
+ * A session only creates its statistics while the instrumentation is turned on, otherwise every command costs a
+ * single null check. No JFR events are emitted, as the game is compiled against the Java 8 API (`--release 8`),
+ * which does not contain the module <code>jdk.jfr</code>.
+ * @author Unknown6656
+ * @version 1
+ */
+public class CommandStats
+{
+    /**
+     * The index of the win check, which is timed inside every placement
+     */
+    public static final int WIN_CHECK = 6;
+    private static final String[] NAMES = { "select", "place", "bag", "rowprint", "colprint", "print", "win" };
+    private final LatencyHistogram[] histograms = new LatencyHistogram[NAMES.length];
+
+
+    /**
+     * Creates new empty statistics
+     */
+    public CommandStats()
+    {
+        super();
+
+        for (int i = 0; i < NAMES.length; i++)
+            this.histograms[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Returns the number of timed commands (the win check has the highest index)
+     * @return Command count
+     */
+    public static int count()
+    {
+        return NAMES.length;
+    }
+
+    /**
+     * Returns the name of the given command
+     * @param index Command index
+     * @return Command name
+     */
+    public static String name(int index)
+    {
+        return NAMES[index];
+    }
+
+    /**
+     * Returns the index of the given command
+     * @param command Command name (lower case)
+     * @return Command index or -1, if the command is not timed
+     */
+    public static int indexOf(String command)
+    {
+        for (int i = 0; i < WIN_CHECK; i++)
+            if (NAMES[i].equals(command))
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * Records the latency of the given command
+     * @param index Command index (-1 := the command is not timed)
+     * @param start The value of <code>System.nanoTime()</code> before the command has been executed
+     */
+    public void record(int index, long start)
+    {
+        if (index >= 0)
+            this.histograms[index].record(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the histogram of the given command
+     * @param index Command index
+     * @return Latency histogram in nanoseconds
+     */
+    public LatencyHistogram get(int index)
+    {
+        return this.histograms[index];
+    }
+
+    /**
+     * Removes all recorded latencies
+     */
+    public void reset()
+    {
+        for (LatencyHistogram histogram : this.histograms)
+            histogram.reset();
+    }
+
+    /**
+     * Appends one line per command to the given string builder
+     * @param sb String builder
+     * @return The given string builder
+     */
+    public StringBuilder appendTo(StringBuilder sb)
+    {
+        for (int i = 0; i < NAMES.length; i++)
+        {
+            LatencyHistogram h = this.histograms[i];
+
+            if (i > 0)
+                sb.append('\n');
+
+            sb.append(String.format("%s: %d calls, mean %d ns, p50 %d ns, p90 %d ns, p99 %d ns, p99.9 %d ns, max %d ns",
+                                    NAMES[i], h.getCount(), Math.round(h.getMean()), h.getPercentile(50),
+                                    h.getPercentile(90), h.getPercentile(99), h.getPercentile(99.9), h.getMax()));
+        }
+
+        return sb;
+    }
+}
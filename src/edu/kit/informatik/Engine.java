@@ -0,0 +1,33 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.Random;
+
+/**
+ * A playing engine of the <code>Tournament</code>. Every engine instance is used by a single thread only, but it
+ * plays many games in a row, so it must not keep any state of a previous game.
+ * @author Unknown6656
+ * @version 1
+ */
+public interface Engine
+{
+    /**
+     * Returns the engine's name
+     * @return Name
+     */
+    String getName();
+
+    /**
+     * Chooses the move of the player to move. If a piece has been selected, the player has to place it and to select
+     * the opponent's piece afterwards, otherwise the player only has to select the opponent's piece. The board must
+     * be restored before the method returns.
+     * @param board Game board
+     * @param random Random number generator of the current game
+     * @return The move, packed as <code>(cell &lt;&lt; 4) | piece</code> (the cell is ignored, if no piece has
+     * been selected, and the piece is ignored, if the bag is empty after the placement)
+     */
+    int move(GameBoard board, Random random);
+}
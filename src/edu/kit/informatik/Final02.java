@@ -4,6 +4,11 @@
 
 package edu.kit.informatik;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
 /**
  * Utility class for the final task 02
  * @author Unknown6656
@@ -11,22 +16,6 @@ package edu.kit.informatik;
  */
 public final class Final02
 {
-    /**
-     * The underlying game board
-     */
-    private static GameBoard game;
-    private static boolean finished;
-    private static int round;
-    
-    /**
-     * static default constructor
-     */
-    static
-    {
-        game = new GameBoard(6, false);
-        game.setPlayer((byte) 0); // set to the first player
-    }
-    
     /**
      * private default constructor
      */
@@ -44,9 +33,7 @@ public final class Final02
         {
             String arg = args[0].toLowerCase().trim();
             
-            if (arg.equals("torus"))
-                game.setTorus(true);
-            else if (!arg.equals("standard"))
+            if (!arg.equals("torus") && !arg.equals("standard"))
             {
                 out("Error, Expected `torus` or `standard` as first argument.");
                 
@@ -54,7 +41,26 @@ public final class Final02
                 return;
             }
 
-            mainLoop();
+            GameRecordWriter recorder = null;
+            
+            // the optional arguments are the path of an endgame tablebase and `record=<path>` of a game archive
+            for (int i = 1; i < args.length; i++)
+                try
+                {
+                    if (args[i].startsWith("record="))
+                        recorder = GameRecordWriter.open(Paths.get(args[i].substring(7)));
+                    else
+                        Session.setTablebase(Tablebase.open(Paths.get(args[i])));
+                }
+                catch (IOException | InvalidPathException ex)
+                {
+                    out("Error, The file `%s` could not be opened: %s", args[i], ex.getMessage());
+                    
+                    System.exit(1);
+                    return;
+                }
+            
+            mainLoop(arg.equals("torus"), recorder);
         }
        
         out("Error, At least one argument expected.");
@@ -63,166 +69,71 @@ public final class Final02
     }
 
     // the application's main loop
-    private static void mainLoop()
+    private static void mainLoop(boolean torus, GameRecordWriter recorder)
     {
-        round = 0;
-        finished = false;
-        game.setPlayer((byte) 1);
+        BufferedOutput output = new BufferedOutput(System.out);
+        Session session = new Session(torus, output);
+        LineReader reader = new LineReader(System.in);
+        Charset charset = Charset.defaultCharset();
+        int status = 0;
         
-        while (true)
+        session.setRecorder(recorder);
+        session.setSnapshotDirectory(Paths.get("")); // the working directory
+        
+        try
         {
-            String command = Terminal.readLine().trim();
-            String arguments = command.contains(" ") ? command.substring(command.indexOf(' ')).trim() : "";
-            
-            if (command.contains(" "))
-                command = command.substring(0, command.indexOf(' ') + 1).trim();
-            
-            try
+            while (true)
             {
-                switch (command.toLowerCase())
+                boolean read;
+                
+                try
                 {
-                    case "select":
-                        internalSELECTCommand(arguments);
-                        
-                        break;
-                    case "place":
-                        internalPLACECommand(arguments);
-                        
-                        break;
-                    case "bag":
-                        StringBuilder sb = new StringBuilder();
-
-                        for (Piece p : game.getBag())
-                            sb.append(p.value())
-                              .append(" ");
-                        
-                        out(sb.toString().trim());
-                        
-                        break;
-                    case "rowprint":
-                        if (checkArgumentsCount(arguments, 1))
-                            out(game.printRow(Integer.parseInt(arguments)));
-                        
-                        break;
-                    case "colprint":
-                        if (checkArgumentsCount(arguments, 1))
-                            out(game.printColumn(Integer.parseInt(arguments)));
-
-                        break;
-                    case "print": // only for debugging
-                        out(game.print());
-                        
-                        break;
-                    case "exit":
-                    case "quit":
-                        System.exit(0);
-                        
-                        return;
-                    default:
-                        out("Error, The command '%s' is unknown or not registered.", command);
+                    if (!reader.ready()) // the responses are flushed, before waiting for the next command
+                        output.flush();
+                    
+                    read = reader.next();
+                }
+                catch (IOException ex)
+                {
+                    read = false;
                 }
-            }
-            catch (NumberFormatException ex)
-            {
-                out("Error, At least one argument/command could not be parsed as an integer value.");
-            }
-            catch (NullPointerException ex)
-            {
-                out("Error, Some internal error occured. Pray to god/jesus or retry the operation an other time.");
-            }
-            catch (StackOverflowError ex)
-            {
-                out("Error, Some internal error occured. Pray to god/jesus or retry the operation an other time.");
-            }
-        }
-    }
-
-    // Fired, when the command `SELECT` is used
-    private static void internalSELECTCommand(String arguments)
-    {
-        if (finished)
-            out("Error, Invalid operation `select`: The game has already been finished.");
-        else if (checkArgumentsCount(arguments, 1))
-            if (game.getSelected() == null)
-            {
-                byte num = Byte.parseByte(arguments);
                 
-                if ((num < 0x00) || (num > 0x0f))
-                    out("Error, The game piece number must be a positive integer value between "
-                      + "0 and 15 [incl.]");
-                else if (!game.bag()[num].isUsed())
+                if (!read) // the input has ended without `quit`
                 {
-                    game.setSelected(game.bag()[num]);
-                    game.getSelected().setUsed(true);
+                    session.end();
                     
-                    out("OK");
+                    status = 1;
+                    
+                    break;
                 }
-                else
-                    out("Error, The game piece number %d has already been used.", num);
+                else if (!session.execute(reader.buffer(), reader.start(), reader.end(), charset))
+                    break;
             }
-            else
-                out("Error, The `select`-command is invalid, as the selection is currently locked.");
+        }
+        finally // the responses of the commands executed so far are never lost
+        {
+            output.flush();
+        }
+        
+        close(recorder);
+        
+        System.exit(status);
     }
 
-    // Fired, when the command `PLACE` is used
-    private static void internalPLACECommand(String arguments)
+    // closes the given game archive (if any)
+    private static void close(GameRecordWriter recorder)
     {
-        if (finished)
-            out("Error, Invalid operation `place`: The game has already been finished.");
-        else if (checkArgumentsCount(arguments, 2))
-            if (game.getSelected() != null)
+        if (recorder != null)
+            try
             {
-                String[] coord = arguments.split("\\;");
-                int x = Integer.parseInt(coord[1]);
-                int y = Integer.parseInt(coord[0]);
-                
-                switch (game.placePiece(game.getSelected().value(), x, y))
-                {
-                    case 1: out("Error, Invalid coordinates (%d|%d): The field might is outside "
-                              + "the game board dimensions.", x, y);
-                        break;
-                    case 2: out("Error, The piece in question is invalid.");
-                        break;
-                    case 3: out("Error, Invalid coordinates (%d|%d): The field is already in use.", x, y);
-                        break;
-                    default:
-                        if (game.getWinner(x, y))
-                        {
-                            out("P%d wins\n%d", game.getPlayer() + 1, round);
-                            
-                            finished = true;
-                        }
-                        else if (game.getBag().size() > 0)
-                        {
-                            game.setSelected(null);
-                            game.nextPlayer();
-                            
-                            round++;
-                            
-                            out("OK");
-                        }
-                        else
-                            out("draw");
-                }
+                recorder.close();
+            }
+            catch (IOException ex)
+            {
+                out("Error, The game archive could not be written: %s", ex.getMessage());
             }
-            else
-                out("Error, The `place`-command is invalid, as no piece is currently selected.");
-    }
-    
-    // checks, whether the given argument string contains enough arguments
-    private static boolean checkArgumentsCount(String arg, int count)
-    {
-        if ((count == 1) && (arg.length() > 0))
-            return true;
-        else if (arg.split("\\;").length < count)
-        {
-            out("Error, Not enough arguments: At least %d arguments separated by a semicolon are required.", count);
-            return false;
-        }
-        
-        return true;
     }
-    
+
     /**
      * redirects the output stream
      * @param msg String to be written into the output stream
@@ -250,9 +161,6 @@ public final class Final02
      */
     protected static int mod(int num, int div)
     {
-        if (num >= 0)
-            return num % div;
-        else
-            return div - ((-num) % div);
+        return ((num % div) + div) % div;
     }
 }
@@ -4,7 +4,9 @@
 
 package edu.kit.informatik;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Represents a game board
@@ -17,15 +19,32 @@ public class GameBoard
      * The value assigned to a player-field, if the player is not (yet) defined
      */
     public static final byte NOT_DEFINED = -0x7f;
+    private static final long SELECT = 0x01; // move history action: a piece has been selected
+    private static final long PLACE = 0x02; // move history action: the selected piece has been placed
+    private static final long LINKED = 0x04; // the action is undone/redone together with the preceding one
+    private static final long[] NO_HISTORY = new long[0];
     /* y := Row
      * x := Column
      */
     private final int size;
-    private Piece[][] field; // [row][column] // [y][x]
+    private long[] occupied; // one bit per cell, index := y * size + x
+    private long[] values; // one nibble (piece value) per cell, index := y * size + x
     private byte player;
     private boolean torus;
-    private Piece[] bag;
+    private int bag; // bit mask of all pieces inside the bag (bit index := piece value)
+    private final List<Piece> bagView = new BagView();
     private Piece selected = null;
+    private Geometry geometry;
+    private WinTracker tracker;
+    private final long[] cellKeys; // Zobrist keys, cell * 16 + piece
+    private long hash;
+    private int round;
+    private boolean finished;
+    private boolean restored; // the state has been restored from a snapshot, the moves before it are unknown
+    private long[] history; // 3 words per action: previous state, previous hash, action
+    private int moves; // number of recorded actions
+    private int redoable; // number of recorded actions including the undone ones, which can be redone
+    private LatencyHistogram winTimer; // null := the win check is not timed
     
     
     /**
@@ -56,10 +75,37 @@ public class GameBoard
 
         this.size = size;
         this.torus = torus;
+        this.geometry = Geometry.get(size, torus);
+        this.cellKeys = Zobrist.cells(size * size);
         
         reset();
     }
     
+    /**
+     * Creates a copy of the given game board (without the move history)
+     * @param other Game board to be copied
+     */
+    public GameBoard(GameBoard other)
+    {
+        super();
+
+        this.size = other.size;
+        this.torus = other.torus;
+        this.geometry = other.geometry;
+        this.cellKeys = other.cellKeys;
+        this.occupied = other.occupied.clone();
+        this.values = other.values.clone();
+        this.tracker = new WinTracker(other.tracker);
+        this.player = other.player;
+        this.hash = other.hash;
+        this.bag = other.bag;
+        this.selected = other.selected;
+        this.round = other.round;
+        this.finished = other.finished;
+        this.restored = other.restored;
+        this.history = NO_HISTORY;
+    }
+    
     /**
      * Returns, whether the current game board is a torus
      * @return true == torus, false == standard
@@ -93,57 +139,91 @@ public class GameBoard
      */
     public void setPlayer(byte player)
     {
+        if ((this.player == 1) != (player == 1))
+            this.hash ^= Zobrist.player();
+
         this.player = player;
     }
  
+    /**
+     * Sets the histogram, which receives the latency of the win check of every placement (copies of the game board
+     * do not inherit it)
+     * @param winTimer Latency histogram in nanoseconds or null, if the win check shall not be timed
+     */
+    public void setWinTimer(LatencyHistogram winTimer)
+    {
+        this.winTimer = winTimer;
+    }
+    
     /**
      * Changes the internal `player`-field to the next player
      */
     public void nextPlayer()
     {
         this.player = (byte) (this.player == 1 ? 0 : 1);
+        this.hash ^= Zobrist.player();
     }
 
     /**
      * Returns the string representation of the given row
      * @param row Row
-     * @return String representation
+     * @return String representation or null, if the row does not exist
      */
     public String printRow(int row)
     {
         StringBuilder sb = new StringBuilder();
         
-        int nrow = isTorus() ? Final02.mod(row, size) : row;
-
-        if ((nrow < 0) || (nrow >= size))
-            Final02.out("Error, the row number must be a valid integer number between 0 and %d.", size - 1);
-        else
-            for (int x = 0; x < size; x++)
-                sb.append(field[nrow][x] == null ? "#" : field[nrow][x].value())
-                  .append(' ');
-        
-        return sb.toString().trim();
+        return appendRow(sb, row) ? sb.toString() : null;
     }
     
     /**
      * Returns the string representation of the given column
      * @param col Column
-     * @return String representation
+     * @return String representation or null, if the column does not exist
      */
     public String printColumn(int col)
     {
         StringBuilder sb = new StringBuilder();
+        
+        return appendColumn(sb, col) ? sb.toString() : null;
+    }
+
+    /**
+     * Appends the string representation of the given row to the given string builder
+     * @param sb String builder
+     * @param row Row
+     * @return False, if the row does not exist
+     */
+    boolean appendRow(StringBuilder sb, int row)
+    {
+        int nrow = isTorus() ? Final02.mod(row, size) : row;
+
+        if ((nrow < 0) || (nrow >= size))
+            return false;
+        
+        for (int x = 0, i = nrow * size; x < size; x++, i++)
+            appendCell(x == 0 ? sb : sb.append(' '), i);
+        
+        return true;
+    }
 
+    /**
+     * Appends the string representation of the given column to the given string builder
+     * @param sb String builder
+     * @param col Column
+     * @return False, if the column does not exist
+     */
+    boolean appendColumn(StringBuilder sb, int col)
+    {
         int ncol = isTorus() ? Final02.mod(col, size) : col;
 
         if ((ncol < 0) || (ncol >= size))
-            Final02.out("Error, the column number must be a valid integer number between 0 and %d.", size - 1);
-        else
-            for (int y = 0; y < size; y++)
-                sb.append(field[y][ncol] == null ? "#" : field[y][ncol].value())
-                  .append(' ');
+            return false;
         
-        return sb.toString().trim();
+        for (int y = 0, i = ncol; y < size; y++, i += size)
+            appendCell(y == 0 ? sb : sb.append(' '), i);
+        
+        return true;
     }
 
     /**
@@ -154,11 +234,10 @@ public class GameBoard
     {
         StringBuilder sb = new StringBuilder();
 
-        for (int y = 0; y < size; y++)
+        for (int y = 0, i = 0; y < size; y++)
         {
-            for (int x = 0; x < size; x++)
-                sb.append(field[y][x] == null ? "#" : field[y][x].value())
-                  .append(' ');
+            for (int x = 0; x < size; x++, i++)
+                appendCell(sb, i).append(' ');
             
             sb.append('\n');
         }
@@ -179,24 +258,17 @@ public class GameBoard
      */
     public byte placePiece(byte piece, int x, int y)
     {
-        int nx = x;
-        int ny = y; // assignment is not allowed --> value copy
+        int index = cellOf(x, y);
         
-        if (this.isTorus()) // prevent negative values and modulo the position
-        {
-            nx = Final02.mod(nx, size);
-            ny = Final02.mod(ny, size);
-        }
-        else if ((nx < 0) || (ny < 0) || (nx >= this.size) || (ny >= this.size))
+        if (index < 0)
             return 1;
-        
-        if ((piece < 0x00) || (piece > 0x0f))
+        else if ((piece < 0x00) || (piece > 0x0f))
             return 2;
         
-        if (this.field[ny][nx] == null)
+        if (!isOccupied(index))
         {
-            this.bag[piece].setUsed(true);
-            this.field[ny][nx] = this.bag[piece];
+            takeFromBag(piece);
+            put(index, piece);
             
             return 0;
         }
@@ -205,18 +277,297 @@ public class GameBoard
     }
     
     /**
-     * Returns the so-called game bag, which consists of all unused game pieces
-     * @return Game piece bag
+     * Selects the given piece from the bag for the player to move and records the action in the move history
+     * @param piece Piece value
+     * @return Action return code<br/>
+     * 0 := OK<br/>
+     * 1 := Invalid piece value<br/>
+     * 2 := Piece already used<br/>
+     * 3 := Another piece is already selected
      */
-    public ArrayList<Piece> getBag()
+    public byte selectPiece(int piece)
     {
-        ArrayList<Piece> res = new ArrayList<Piece>();
+        if ((piece < 0x00) || (piece > 0x0f))
+            return 1;
+        else if (!isInBag(piece))
+            return 2;
+        else if (this.selected != null)
+            return 3;
         
-        for (int i = 0, l = this.bag().length; i < l; i++)
-            if (!this.bag[i].isUsed())
-                res.add(this.bag[i]);
+        record(SELECT | (piece << 3));
+        setSelected(Piece.of(piece));
         
-        return res;
+        this.redoable = this.moves;
+        
+        return 0;
+    }
+    
+    /**
+     * Places the selected piece on the given position and records the action in the move history. If the game
+     * continues, the selection is cleared, the next player is to move and the round counter is incremented.
+     * @param x Game piece X (horizontal) position
+     * @param y Game piece Y (vertical) position
+     * @return Action return code<br/>
+     * 0 := OK, the game continues<br/>
+     * 1 := Outside the field / Invalid position<br/>
+     * 2 := No piece selected<br/>
+     * 3 := Cell already in use<br/>
+     * 4 := OK, the player to move has won<br/>
+     * 5 := OK, the bag is empty (draw)
+     */
+    public byte placeSelected(int x, int y)
+    {
+        return place(x, y, 0L);
+    }
+    
+    /**
+     * Makes a complete move: Selects the given piece and places it on the given position (see
+     * <code>selectPiece</code> and <code>placeSelected</code>). The move is only made, if both actions are valid, and
+     * it is undone and redone as a whole.
+     * @param select Piece value or -1, if the currently selected piece shall be placed
+     * @param x Game piece X (horizontal) position
+     * @param y Game piece Y (vertical) position
+     * @return Action return code of <code>placeSelected</code> (2 := the piece cannot be selected)
+     */
+    public byte makeMove(int select, int x, int y)
+    {
+        if (select < 0)
+            return place(x, y, 0L);
+        
+        int index = cellOf(x, y);
+        
+        if (index < 0)
+            return 1;
+        else if ((this.selected != null) || (select > 0x0f) || !isInBag(select))
+            return 2;
+        else if (isOccupied(index))
+            return 3;
+        
+        selectPiece(select);
+        
+        return place(x, y, LINKED);
+    }
+    
+    /**
+     * Undoes the last move (or the last single action: see <code>selectPiece</code> and
+     * <code>placeSelected</code>). The field, the bag, the selected piece, the player, the round counter, the hash and
+     * the win tracker are restored in constant time.
+     * @return False, if no move has been made
+     */
+    public boolean unmakeMove()
+    {
+        if (this.moves == 0)
+            return false;
+        
+        long action;
+        
+        do
+        {
+            int i = --this.moves * 3;
+            long state = this.history[i];
+            
+            action = this.history[i + 2];
+            
+            if ((action & PLACE) != 0L)
+                take((int) (action >>> 3));
+            
+            this.bag = (int) state & 0xffff;
+            this.selected = (state & 0x1f0000L) == 0L ? null : Piece.of((int) (state >>> 16) - 1);
+            this.player = (byte) (state >>> 21);
+            this.finished = (state & (1L << 29)) != 0L;
+            this.round = (int) (state >>> 32);
+            this.hash = this.history[i + 1];
+        }
+        while ((action & LINKED) != 0L);
+        
+        return true;
+    }
+    
+    /**
+     * Redoes the last undone move
+     * @return False, if no undone move exists (or if another move has been made since)
+     */
+    public boolean redoMove()
+    {
+        if (this.moves == this.redoable)
+            return false;
+        
+        do
+        {
+            long action = this.history[this.moves * 3 + 2];
+            int arg = (int) (action >>> 3);
+            
+            record(action);
+            
+            if ((action & PLACE) != 0L)
+                finishPlacement(arg);
+            else
+                setSelected(Piece.of(arg));
+        }
+        while ((this.moves < this.redoable) && ((this.history[this.moves * 3 + 2] & LINKED) != 0L));
+        
+        return true;
+    }
+    
+    /**
+     * Writes all legal moves of the player to move into the given array without allocating memory. A move places
+     * the selected piece on an empty cell and selects the next piece from the bag for the opponent. It is packed as
+     * <code>(cell &lt;&lt; 4) | next</code> (see <code>moveCell</code> and <code>moveNext</code>).<br/>
+     * The moves are ordered: Immediately winning moves come first, moves selecting a "poisoned" piece, with which the
+     * opponent could win immediately, come last.
+     * @param moves Output array with a length of at least <code>size * size * 16</code>
+     * @return Number of moves (0, if no piece is selected). If the bag is empty, there is one move per empty cell
+     * with the next piece 0.
+     */
+    public int generateMoves(int[] moves)
+    {
+        return this.selected == null ? 0 : generateMoves(this.selected.value(), this.bag, moves, true);
+    }
+    
+    /**
+     * Returns the cell of the given packed move (see <code>generateMoves</code>)
+     * @param move Packed move
+     * @return Flat cell index (y * size + x)
+     */
+    public static int moveCell(int move)
+    {
+        return move >>> 4;
+    }
+    
+    /**
+     * Returns the next piece of the given packed move (see <code>generateMoves</code>)
+     * @param move Packed move
+     * @return Piece value
+     */
+    public static int moveNext(int move)
+    {
+        return move & 0x0f;
+    }
+    
+    /**
+     * Writes all legal moves for the given piece and bag into the given array (see <code>generateMoves</code>)
+     * @param piece The piece, which has to be placed by the player to move
+     * @param bag All remaining pieces (without the given piece)
+     * @param moves Output array with a length of at least <code>size * size * 16</code>
+     * @param wins Indicates, whether winning moves may exist (false, if the caller has already checked that none
+     * exists)
+     * @return Number of moves
+     */
+    int generateMoves(int piece, int bag, int[] moves, boolean wins)
+    {
+        int cells = size * size;
+        int count = 0;
+        int poisoned = moves.length; // poisoned moves are collected at the end of the array
+        int threats = this.tracker.threats();
+        
+        if (wins && ((threats & (1 << piece)) != 0))
+            for (int c = 0; c < cells; c++)
+                if (!isOccupied(c) && this.tracker.wouldWin(c, piece))
+                    count = appendMoves(moves, count, c, bag == 0 ? 0x0001 : bag);
+        
+        int winning = count;
+        
+        for (int c = 0; c < cells; c++)
+            if (!isOccupied(c) && ((winning == 0) || !this.tracker.wouldWin(c, piece)))
+                if (bag == 0)
+                    moves[count++] = c << 4;
+                else
+                {
+                    int poison = this.tracker.threatsAfter(c, piece, threats) & bag;
+                    
+                    count = appendMoves(moves, count, c, bag & ~poison);
+                    
+                    for (int rest = poison; rest != 0; rest &= rest - 1)
+                        moves[--poisoned] = (c << 4) | Integer.numberOfTrailingZeros(rest);
+                }
+        
+        System.arraycopy(moves, poisoned, moves, count, moves.length - poisoned);
+        
+        return count + moves.length - poisoned;
+    }
+    
+    /**
+     * Writes all placements of the current game (in the order of the move history without the undone moves) into the
+     * given array, every placement is packed as <code>(cell &lt;&lt; 4) | piece</code>
+     * @param placements Output array with a length of at least <code>size * size</code>
+     * @return Number of placements
+     */
+    public int getPlacements(int[] placements)
+    {
+        int count = 0;
+        
+        for (int i = 0; i < this.moves * 3; i += 3)
+            if ((this.history[i + 2] & PLACE) != 0L)
+                placements[count++] = ((int) (this.history[i + 2] >>> 3) << 4)
+                                    | ((((int) (this.history[i] >>> 16)) & 0x1f) - 1);
+        
+        return count;
+    }
+    
+    /**
+     * Returns the round counter, which is incremented after every placement, if the game continues
+     * @return Round
+     */
+    public int getRound()
+    {
+        return this.round;
+    }
+    
+    /**
+     * Returns, whether the game has been won
+     * @return Finished
+     */
+    public boolean isFinished()
+    {
+        return this.finished;
+    }
+    
+    /**
+     * Returns, whether the current game has been restored from a snapshot (see <code>restore</code>), so that its
+     * move history does not begin with the first placement
+     * @return True, if the game has been restored
+     */
+    public boolean isRestored()
+    {
+        return this.restored;
+    }
+    
+    /**
+     * Returns the so-called game bag, which consists of all unused game pieces (in ascending order)
+     * @return Read-only view of the game piece bag, which reflects all later changes
+     */
+    public List<Piece> getBag()
+    {
+        return this.bagView;
+    }
+
+    /**
+     * Returns the bit mask of all unused game pieces: The piece <code>p</code> is inside the bag, if the bit
+     * <code>1 &lt;&lt; p</code> is set
+     * @return Bag bit mask
+     */
+    public int getBagMask()
+    {
+        return this.bag;
+    }
+
+    /**
+     * Returns the number of unused game pieces
+     * @return Bag size
+     */
+    public int getBagSize()
+    {
+        return Integer.bitCount(this.bag);
+    }
+
+    /**
+     * Returns, whether the given piece is still inside the bag
+     * @param piece Piece value
+     * @return True, if the piece has not been used yet
+     */
+    public boolean isInBag(int piece)
+    {
+        return (this.bag & (1 << piece)) != 0;
     }
 
     /**
@@ -227,10 +578,13 @@ public class GameBoard
      */
     protected boolean getWinner(int x, int y)
     {
-        return getWinnerHorizontal(x, y)
-            || getWinnerVertical(x, y)
-            || getWinnerDiagonal1(x, y)
-            || getWinnerDiagonal2(x, y);
+        if (isTorus())
+        {
+            x = Final02.mod(x, size);
+            y = Final02.mod(y, size);
+        }
+
+        return this.tracker.isWin(y * size + x);
     }
 
     /**
@@ -239,189 +593,178 @@ public class GameBoard
     public void reset()
     {
         this.player = NOT_DEFINED;
-        this.field = new Piece[size][size];
-        this.bag = new Piece[0x10];
-        
-        for (byte i = 0x00; i <= 0x0f; i++)
+        this.selected = null;
+        this.hash = Zobrist.initial();
+        this.occupied = new long[(size * size + 63) >>> 6];
+        this.values = new long[(size * size + 15) >>> 4];
+        this.tracker = new WinTracker(geometry);
+        this.bag = 0xffff;
+        this.round = 0;
+        this.finished = false;
+        this.restored = false;
+        this.history = NO_HISTORY;
+        this.moves = 0;
+        this.redoable = 0;
+    }
+
+    /**
+     * Replaces the current state by the given one (see <code>Snapshot</code>). The move history is cleared, the hash
+     * and the win tracker are rebuilt from the placed pieces. The board is marked as restored until the next
+     * <code>reset</code>.
+     * @param torus Indicates, whether the game board is a torus
+     * @param cells Piece value per flat cell index (y * size + x) or -1 for an empty cell
+     * @param bag Bag bit mask
+     * @param selected Selected piece value or -1
+     * @param player Player to move
+     * @param round Round counter
+     * @param finished Indicates, whether the game has been won
+     */
+    void restore(boolean torus, int[] cells, int bag, int selected, byte player, int round, boolean finished)
+    {
+        if (torus != this.torus)
         {
-            this.bag[i] = new Piece(i);
-            this.bag[i].setUsed(false);
+            this.torus = torus;
+            this.geometry = Geometry.get(size, torus);
         }
+        
+        reset();
+        
+        for (int i = 0; i < cells.length; i++)
+            if (cells[i] >= 0)
+                put(i, cells[i]);
+        
+        for (int p = 0x00; p <= 0x0f; p++)
+            if ((bag & (1 << p)) == 0)
+                this.hash ^= Zobrist.bag(p);
+        
+        this.bag = bag;
+        this.round = round;
+        this.finished = finished;
+        this.restored = true;
+        
+        setPlayer(player);
+        setSelected(selected < 0 ? null : Piece.of(selected));
     }
     
-    // check horizontally for a winner
-    private boolean getWinnerHorizontal(int x, int y)
+    /**
+     * Returns the piece placed on the given cell
+     * @param x Cell X (horizontal) position
+     * @param y Cell Y (vertical) position
+     * @return Game piece or null, if the cell is empty
+     */
+    public Piece getPiece(int x, int y)
     {
-        byte tmp = 0x00; // byte mask
-        int cnt = 0x00; // internal counter
+        int index = y * size + x;
 
-        for (int i = -4; i <= 4; i++)
-        {
-            if (((x + i < 0) || (x + i >= this.size)) && !isTorus())
-                continue;
-
-            Piece p = field[y][Final02.mod(x + i, this.size)];
-           
-            if (p == null) // piece is null
-            {
-                cnt = 0x00;
-                tmp = 0x00;
-            }
-            else if (tmp == 0x00) // not null and mask is zero
-            {
-                tmp = p.value();
-                cnt = 0x01;
-            }
-            else // piece not null, mask not zero
-            {
-                tmp &= p.value();
-                
-                if (tmp == 0x00) // mask has become zero --> reset counter
-                {
-                    cnt = 0x01;
-                    tmp = p.value();
-                }
-                else
-                    cnt++; // increase counter
-            }
-            
-            if (cnt >= 4)
-                return true;
-        }
-        
-        return false;
+        return isOccupied(index) ? Piece.of(valueAt(index)) : null;
     }
 
-    // check vertically for a winner
-    private boolean getWinnerVertical(int x, int y)
+    /**
+     * Returns a <code>Piece[row][column]</code>-view of the packed game board.<br/>
+     * The returned array is a copy: Changes to it will not be reflected on the board.
+     * @return Game field
+     */
+    public Piece[][] getField()
     {
-        byte tmp = 0x00; // byte mask
-        int cnt = 0x00; // internal counter
+        Piece[][] res = new Piece[size][size];
 
-        for (int i = 4; i <= 4; i++)
-        {
-            if (((y + i < 0) || (y + i >= this.size)) && !isTorus())
-                continue;
-
-            Piece p = field[Final02.mod(y + i, this.size)][x];
-           
-            if (p == null) // piece is null
-            {
-                cnt = 0x00;
-                tmp = 0x00;
-            }
-            else if (tmp == 0x00) // not null and mask is zero
-            {
-                tmp = p.value();
-                cnt = 0x01;
-            }
-            else // piece not null, mask not zero
-            {
-                tmp &= p.value();
-                
-                if (tmp == 0x00) // mask has become zero --> reset counter
-                {
-                    cnt = 0x01;
-                    tmp = p.value();
-                }
-                else
-                    cnt++; // increase counter
-            }
-            
-            if (cnt >= 4)
-                return true;
-        }
-        
-        return false;
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++)
+                res[y][x] = getPiece(x, y);
+
+        return res;
     }
 
-    // check the first diagonal [ f(x) = -x in a Cartesian coordinate system]
-    private boolean getWinnerDiagonal2(int x, int y)
+    /**
+     * Places the given piece on the given empty cell without any validation and without touching the bag
+     * (used by search engines, see <code>take</code> for the inverse operation)
+     * @param index Flat cell index (y * size + x)
+     * @param piece Piece value
+     * @return true, if the placement wins the game
+     */
+    boolean put(int index, int piece)
     {
-        byte tmp = 0x00; // byte mask
-        int cnt = 0x00; // internal counter
+        this.hash ^= this.cellKeys[(index << 4) | piece];
+        this.occupied[index >>> 6] |= 1L << index;
+        this.values[index >>> 4] |= (long) piece << ((index & 0x0f) << 2);
 
-        for (int i = -4; i <= 4; i++)
-        {
-            if (((y + i < 0) || (y + i >= this.size) || (x + i < 0) || (x + i >= this.size)) && !isTorus())
-                continue;
-
-            Piece p = field[Final02.mod(y + i, this.size)][Final02.mod(x + i, this.size)];
-           
-            if (p == null) // piece is null
-            {
-                cnt = 0x00;
-                tmp = 0x00;
-            }
-            else if (tmp == 0x00) // not null and mask is zero
-            {
-                tmp = p.value();
-                cnt = 0x01;
-            }
-            else // piece not null, mask not zero
-            {
-                tmp &= p.value();
-                
-                if (tmp == 0x00) // mask has become zero --> reset counter
-                {
-                    cnt = 0x01;
-                    tmp = p.value();
-                }
-                else
-                    cnt++; // increase counter
-            }
-            
-            if (cnt >= 4)
-                return true;
-        }
-        
-        return false;
+        return this.tracker.add(index, piece);
     }
 
-    // check the second diagonal [ f(x) = x in a Cartesian coordinate system]
-    private boolean getWinnerDiagonal1(int x, int y)
+    /**
+     * Removes the piece from the given occupied cell (the inverse operation of <code>put</code>)
+     * @param index Flat cell index (y * size + x)
+     */
+    void take(int index)
     {
-        byte tmp = 0x00; // byte mask
-        int cnt = 0x00; // internal counter
+        int shift = (index & 0x0f) << 2;
+        int piece = valueAt(index);
+
+        this.hash ^= this.cellKeys[(index << 4) | piece];
+        this.tracker.remove(index, piece);
+        this.occupied[index >>> 6] &= ~(1L << index);
+        this.values[index >>> 4] &= ~(0x0fL << shift);
+    }
 
-        for (int i = -4; i <= 4; i++)
+    /**
+     * Returns the given 64-cell word of the occupancy bit mask (bit <code>i</code> of word <code>w</code> represents the
+     * cell <code>w * 64 + i</code>)
+     * @param word Word index
+     * @return Occupancy bits
+     */
+    long occupiedWord(int word)
+    {
+        return this.occupied[word];
+    }
+
+    /**
+     * Returns the first empty cell
+     * @return Flat cell index (y * size + x) or -1, if the game board is full
+     */
+    int freeCell()
+    {
+        int cells = size * size;
+        
+        for (int w = 0; w < this.occupied.length; w++)
         {
-            if (((y + i < 0) || (y + i >= this.size) || (x - i < 0) || (x - i >= this.size)) && !isTorus())
-                continue;
-
-            Piece p = field[Final02.mod(y + i, this.size)][Final02.mod(x - i, this.size)];
-           
-            if (p == null) // piece is null
-            {
-                cnt = 0x00;
-                tmp = 0x00;
-            }
-            else if (tmp == 0x00) // not null and mask is zero
-            {
-                tmp = p.value();
-                cnt = 0x01;
-            }
-            else // piece not null, mask not zero
-            {
-                tmp &= p.value();
-                
-                if (tmp == 0x00) // mask has become zero --> reset counter
-                {
-                    cnt = 0x01;
-                    tmp = p.value();
-                }
-                else
-                    cnt++; // increase counter
-            }
+            long free = ~this.occupied[w];
             
-            if (cnt >= 4)
-                return true;
+            if (cells - (w << 6) < 0x40) // the word contains the last cell
+                free &= (1L << (cells - (w << 6))) - 1;
+            
+            if (free != 0L)
+                return (w << 6) | Long.numberOfTrailingZeros(free);
         }
         
-        return false;
+        return -1;
     }
-
     
+    /**
+     * Returns, whether the cell with the given flat index is occupied
+     * @param index Flat cell index (y * size + x)
+     * @return Occupied
+     */
+    boolean isOccupied(int index)
+    {
+        return (this.occupied[index >>> 6] & (1L << index)) != 0L;
+    }
+
+    /**
+     * Returns the piece value stored in the cell with the given flat index (only valid for occupied cells)
+     * @param index Flat cell index (y * size + x)
+     * @return Piece value
+     */
+    int valueAt(int index)
+    {
+        return (int) (this.values[index >>> 4] >>> ((index & 0x0f) << 2)) & 0x0f;
+    }
+
+    // appends the string representation of the cell with the given flat index
+    private StringBuilder appendCell(StringBuilder sb, int index)
+    {
+        return isOccupied(index) ? sb.append(valueAt(index)) : sb.append('#');
+    }
+
     /**
      * Returns the selected Piece
      * @return The selected Piece
@@ -433,21 +776,145 @@ public class GameBoard
     
 
     /**
-     * Sets the selected Piece to the given value
+     * Sets the selected Piece to the given value. The new selected Piece is removed from the bag.
      * @param selected New selected Piece
      */
     public void setSelected(Piece selected)
     {
+        if (this.selected != null)
+            this.hash ^= Zobrist.selected(this.selected.value());
+
+        if (selected != null)
+        {
+            this.hash ^= Zobrist.selected(selected.value());
+
+            takeFromBag(selected.value());
+        }
+
         this.selected = selected;
     }
 
     /**
-     * Returns the array containing all Pieces
-     * @return The bag with all pieces
+     * Returns the 64-bit Zobrist hash of the current position, which covers all placed pieces, the bag, the selected
+     * piece and the player to move
+     * @return Position hash
+     */
+    public long getHash()
+    {
+        return this.hash;
+    }
+
+    // appends the moves placing on the given cell and selecting any of the given pieces
+    private static int appendMoves(int[] moves, int count, int cell, int pieces)
+    {
+        int res = count;
+        
+        for (int rest = pieces; rest != 0; rest &= rest - 1)
+            moves[res++] = (cell << 4) | Integer.numberOfTrailingZeros(rest);
+        
+        return res;
+    }
+    
+    // returns the flat index of the given position or -1, if the position is outside the (standard) board
+    private int cellOf(int x, int y)
+    {
+        if (this.isTorus()) // prevent negative values and modulo the position
+            return Final02.mod(y, size) * size + Final02.mod(x, size);
+        else if ((x < 0) || (y < 0) || (x >= this.size) || (y >= this.size))
+            return -1;
+        
+        return y * size + x;
+    }
+    
+    // places the selected piece and records the action with the given flags
+    private byte place(int x, int y, long flags)
+    {
+        int index = cellOf(x, y);
+        
+        if (index < 0)
+            return 1;
+        else if (this.selected == null)
+            return 2;
+        else if (isOccupied(index))
+            return 3;
+        
+        record(PLACE | flags | ((long) index << 3));
+        
+        this.redoable = this.moves;
+        
+        return finishPlacement(index);
+    }
+    
+    // places the selected piece on the given empty cell and passes the turn, if the game continues
+    private byte finishPlacement(int index)
+    {
+        int piece = this.selected.value();
+        
+        takeFromBag(piece);
+        
+        long start = this.winTimer == null ? 0L : System.nanoTime();
+        boolean win = put(index, piece);
+        
+        if (this.winTimer != null)
+            this.winTimer.record(System.nanoTime() - start);
+        
+        if (win)
+        {
+            this.finished = true;
+            
+            return 4;
+        }
+        else if (this.bag == 0)
+            return 5;
+        
+        setSelected(null);
+        nextPlayer();
+        
+        this.round++;
+        
+        return 0;
+    }
+    
+    // appends the given action and the current state to the move history
+    private void record(long action)
+    {
+        int i = this.moves * 3;
+        
+        if (i == this.history.length)
+            this.history = Arrays.copyOf(this.history, Math.max(i * 2, 3 * 0x20));
+        
+        this.history[i] = this.bag
+                        | ((long) (this.selected == null ? 0 : this.selected.value() + 1) << 16)
+                        | ((long) (this.player & 0xff) << 21)
+                        | (this.finished ? 1L << 29 : 0L)
+                        | ((long) this.round << 32);
+        this.history[i + 1] = this.hash;
+        this.history[i + 2] = action;
+        this.moves++;
+    }
+    
+    // removes the given piece from the bag (if it is still inside)
+    private void takeFromBag(int piece)
+    {
+        if (isInBag(piece))
+        {
+            this.bag &= ~(1 << piece);
+            this.hash ^= Zobrist.bag(piece);
+        }
+    }
+
+    /**
+     * Puts the given piece back into the bag, if it is not inside (the inverse operation of the bag update of
+     * <code>placePiece</code>)
+     * @param piece Piece value
      */
-    public Piece[] bag()
+    void returnToBag(int piece)
     {
-        return bag;
+        if (!isInBag(piece))
+        {
+            this.bag |= 1 << piece;
+            this.hash ^= Zobrist.bag(piece);
+        }
     }
 
     
@@ -458,6 +925,53 @@ public class GameBoard
     public void setTorus(boolean b)
     {
         this.torus = b;
+        this.geometry = Geometry.get(size, b);
+        this.tracker = new WinTracker(geometry);
+
+        for (int i = 0, l = size * size; i < l; i++)
+            if (isOccupied(i))
+                this.tracker.add(i, valueAt(i));
     }
 
+    /**
+     * Returns the lookup tables of the current board geometry
+     * @return Geometry
+     */
+    public Geometry getGeometry()
+    {
+        return this.geometry;
+    }
+
+    /**
+     * Returns the win tracker, which holds the properties of all 4-cell windows of the board
+     * @return Win tracker
+     */
+    public WinTracker getTracker()
+    {
+        return this.tracker;
+    }
+
+    // a read-only list view of the pieces inside the bag
+    private final class BagView extends AbstractList<Piece>
+    {
+        @Override
+        public Piece get(int index)
+        {
+            if ((index < 0) || (index >= size()))
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+            int rest = bag;
+
+            for (int k = index; k > 0; k--)
+                rest &= rest - 1; // drop the lowest pieces
+
+            return Piece.of(Integer.numberOfTrailingZeros(rest));
+        }
+
+        @Override
+        public int size()
+        {
+            return Integer.bitCount(bag);
+        }
+    }
 }
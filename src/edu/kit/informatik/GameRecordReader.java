@@ -0,0 +1,222 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary game archive (written by the <code>GameRecordWriter</code>) record by record. The archive is
+ * memory-mapped in windows of <code>WINDOW</code> bytes and every record is read directly from the mapping, so
+ * iterating an archive does not copy or allocate anything per game.<br/>
+ * <br/>
+ * File layout (big endian):
+ * <pre>
+ * 0x00  int   magic "QGR1"
+ * 0x04  int   reserved
+ * 0x08  records, each consisting of
+ *       byte   board size
+ *       byte   flags (bit 0 := torus, bits 1..2 := result, see <code>RESULT_*</code>)
+ *       byte   number of placements n
+ *       short  n placements, packed as (cell &lt;&lt; 4) | piece
+ * </pre>
+ * @author Unknown6656
+ * @version 1
+ */
+public class GameRecordReader implements Closeable
+{
+    /**
+     * The file's magic number ("QGR1")
+     */
+    public static final int MAGIC = 0x51475231;
+    /**
+     * The size of the file header in bytes
+     */
+    public static final int HEADER = 0x08;
+    /**
+     * The maximum game board size (a placement packs the cell index into 12 bits)
+     */
+    public static final int MAX_SIZE = 0x40;
+    /**
+     * Result: The game has not been finished
+     */
+    public static final int RESULT_NONE = 0;
+    /**
+     * Result: The player, who placed the first piece, has won
+     */
+    public static final int RESULT_FIRST = 1;
+    /**
+     * Result: The player, who placed the second piece, has won
+     */
+    public static final int RESULT_SECOND = 2;
+    /**
+     * Result: The game ended in a draw
+     */
+    public static final int RESULT_DRAW = 3;
+    /**
+     * The maximum size of a mapped window in bytes
+     */
+    public static final int WINDOW = 0x4000000;
+    private static final int MAX_RECORD = 3 + 0xff * 2;
+    private final FileChannel channel;
+    private final long length;
+    private MappedByteBuffer buffer;
+    private long base; // file offset of the mapped window
+    private int position; // offset of the current record inside the window
+    private int next; // offset of the next record inside the window
+    private long games;
+
+
+    /**
+     * Opens the given archive
+     * @param path File path
+     * @throws IOException Thrown, if the file could not be read or is not a game archive
+     */
+    public GameRecordReader(Path path) throws IOException
+    {
+        this(path, HEADER, -1);
+    }
+
+    /**
+     * Opens the given range of an archive (used to split an archive into parts, which are read in parallel)
+     * @param path File path
+     * @param start File offset of the first record
+     * @param end File offset behind the last record (-1 := end of the file)
+     * @throws IOException Thrown, if the file could not be read or is not a game archive
+     */
+    public GameRecordReader(Path path, long start, long end) throws IOException
+    {
+        super();
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try
+        {
+            MappedByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                                       Math.min(HEADER, this.channel.size()));
+
+            if ((header.capacity() < HEADER) || (header.getInt(0) != MAGIC) || (start < HEADER))
+                throw new IOException("The file is not a game archive.");
+
+            this.length = end < 0 ? this.channel.size() : Math.min(end, this.channel.size());
+            map(start);
+        }
+        catch (IOException ex)
+        {
+            this.channel.close();
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Advances to the next record
+     * @return False, if the end of the archive (range) has been reached
+     * @throws IOException Thrown, if the archive could not be read or is truncated
+     */
+    public boolean next() throws IOException
+    {
+        if (this.base + this.next >= this.length)
+            return false;
+        else if ((this.buffer.capacity() - this.next < MAX_RECORD)
+              && (this.base + this.buffer.capacity() < this.length))
+            map(this.base + this.next); // the record might cross the window's end
+
+        int remaining = this.buffer.capacity() - this.next;
+
+        if ((remaining < 3) || (remaining < 3 + 2 * (this.buffer.get(this.next + 2) & 0xff)))
+            throw new IOException("The game archive is truncated.");
+
+        this.position = this.next;
+        this.next += 3 + 2 * getPlacementCount();
+        this.games++;
+
+        return true;
+    }
+
+    /**
+     * Returns the file offset of the current record
+     * @return File offset
+     */
+    public long getOffset()
+    {
+        return this.base + this.position;
+    }
+
+    /**
+     * Returns the number of records read so far
+     * @return Game count
+     */
+    public long getGames()
+    {
+        return this.games;
+    }
+
+    /**
+     * Returns the game board size of the current record
+     * @return Game board size
+     */
+    public int getSize()
+    {
+        return this.buffer.get(this.position) & 0xff;
+    }
+
+    /**
+     * Returns, whether the game of the current record has been played on a torus
+     * @return true == torus, false == standard
+     */
+    public boolean isTorus()
+    {
+        return (this.buffer.get(this.position + 1) & 0x01) != 0;
+    }
+
+    /**
+     * Returns the result of the current record
+     * @return Result (see <code>RESULT_*</code>)
+     */
+    public int getResult()
+    {
+        return (this.buffer.get(this.position + 1) >>> 1) & 0x03;
+    }
+
+    /**
+     * Returns the number of placements of the current record
+     * @return Placement count
+     */
+    public int getPlacementCount()
+    {
+        return this.buffer.get(this.position + 2) & 0xff;
+    }
+
+    /**
+     * Returns the given placement of the current record
+     * @param index Placement index
+     * @return Packed placement <code>(cell &lt;&lt; 4) | piece</code>
+     */
+    public int getPlacement(int index)
+    {
+        return this.buffer.getShort(this.position + 3 + index * 2) & 0xffff;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.channel.close();
+    }
+
+    // maps the window starting at the given file offset
+    private void map(long offset) throws IOException
+    {
+        this.base = offset;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                                       Math.min(WINDOW, Math.max(this.length - offset, 0)));
+        this.position = 0;
+        this.next = 0;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends games to a binary game archive (see <code>GameRecordReader</code> for the format). The records are
+ * collected in a byte buffer and only reach the underlying stream when the buffer is full or <code>flush</code> is
+ * called. The writer can be shared between sessions.
+ * @author Unknown6656
+ * @version 1
+ */
+public class GameRecordWriter implements Closeable
+{
+    private final OutputStream out;
+    private final byte[] buffer = new byte[0x10000];
+    private int[] placements = new int[0x40];
+    private int length;
+    private long games;
+
+
+    /**
+     * Creates a new writer
+     * @param out Underlying output stream
+     * @param header Indicates, whether the file header has to be written (false, if the stream appends to an
+     * existing archive)
+     */
+    public GameRecordWriter(OutputStream out, boolean header)
+    {
+        super();
+
+        this.out = out;
+
+        if (header)
+        {
+            putInt(GameRecordReader.MAGIC);
+            putInt(0);
+        }
+    }
+
+    /**
+     * Opens the given archive for appending (a new archive is created, if the file does not exist or is empty)
+     * @param path File path
+     * @return Writer
+     * @throws IOException Thrown, if the file could not be opened
+     */
+    public static GameRecordWriter open(Path path) throws IOException
+    {
+        boolean empty = !Files.exists(path) || (Files.size(path) == 0);
+
+        return new GameRecordWriter(Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                                    empty);
+    }
+
+    /**
+     * Appends the current game of the given board (without the undone moves)
+     * @param board Game board (with at most 255 placements on at most 64x64 cells)
+     * @throws IOException Thrown, if the buffered records could not be written
+     */
+    public synchronized void write(GameBoard board) throws IOException
+    {
+        if (this.placements.length < board.getSize() * board.getSize())
+            this.placements = new int[board.getSize() * board.getSize()];
+
+        int count = board.getPlacements(this.placements);
+        int result = GameRecordReader.RESULT_NONE;
+
+        if (board.isFinished())
+            result = count % 2 == 1 ? GameRecordReader.RESULT_FIRST : GameRecordReader.RESULT_SECOND;
+        else if (board.getBagMask() == 0)
+            result = GameRecordReader.RESULT_DRAW;
+
+        write(board.getSize(), board.isTorus(), result, this.placements, count);
+    }
+
+    /**
+     * Appends the given game
+     * @param size Game board size (at most <code>GameRecordReader.MAX_SIZE</code>)
+     * @param torus Indicates, whether the game board is a torus
+     * @param result Result (see <code>GameRecordReader.RESULT_*</code>)
+     * @param placements Placements, packed as <code>(cell &lt;&lt; 4) | piece</code>
+     * @param count Number of placements (at most 255)
+     * @throws IOException Thrown, if the buffered records could not be written
+     */
+    public synchronized void write(int size, boolean torus, int result, int[] placements, int count)
+        throws IOException
+    {
+        if ((size > GameRecordReader.MAX_SIZE) || (count > 0xff))
+            throw new IllegalArgumentException("The game is too large for a game record.");
+
+        if (this.buffer.length - this.length < 3 + count * 2)
+            flush();
+
+        this.buffer[this.length++] = (byte) size;
+        this.buffer[this.length++] = (byte) ((result << 1) | (torus ? 1 : 0));
+        this.buffer[this.length++] = (byte) count;
+
+        for (int i = 0; i < count; i++)
+        {
+            this.buffer[this.length++] = (byte) (placements[i] >>> 8);
+            this.buffer[this.length++] = (byte) placements[i];
+        }
+
+        this.games++;
+    }
+
+    /**
+     * Returns the number of games written so far
+     * @return Game count
+     */
+    public synchronized long getGames()
+    {
+        return this.games;
+    }
+
+    /**
+     * Writes all buffered records to the underlying stream
+     * @throws IOException Thrown, if the stream could not be written
+     */
+    public synchronized void flush() throws IOException
+    {
+        this.out.write(this.buffer, 0, this.length);
+        this.out.flush();
+        this.length = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        flush();
+        this.out.close();
+    }
+
+    // appends the given integer (big endian)
+    private void putInt(int value)
+    {
+        for (int shift = 0x18; shift >= 0; shift -= 8)
+            this.buffer[this.length++] = (byte) (value >>> shift);
+    }
+}
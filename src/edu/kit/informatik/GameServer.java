@@ -0,0 +1,489 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A TCP server, which hosts an independent game <code>Session</code> for every connection.<br/>
+ * The protocol is identical to the console application: Every line received is executed as command and the
+ * responses are sent back line by line (terminated by <code>\n</code>). The commands `exit` and `quit` close the
+ * connection.<br/>
+ * All connections are multiplexed on a single selector thread, which executes the cheap commands directly. The
+ * searches (see <code>Session.isSearch</code>) are executed by a pool of worker threads, so that they do not stall the
+ * other connections: While a search is running, the following commands of its connection are queued and the
+ * connection is not read any further. A connection is closed, if a command line exceeds <code>MAX_LINE</code> bytes
+ * or if more than <code>MAX_OUTPUT</code> bytes of responses are pending, because the client does not read them.
+ * The commands `save` and `load` are disabled, unless a snapshot directory has been set.
+ * @author Unknown6656
+ * @version 1
+ */
+public class GameServer
+{
+    /**
+     * The default TCP port
+     */
+    public static final int DEFAULT_PORT = 6656;
+    /**
+     * The charset used for commands and responses
+     */
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int MAX_LINE = 0x2000;
+    private static final int MAX_OUTPUT = 0x100000;
+    private final boolean torus;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+    private final Queue<SelectionKey> completed = new ConcurrentLinkedQueue<SelectionKey>(); // posted by the workers
+    private final ByteBuffer input = ByteBuffer.allocateDirect(0x10000);
+    private volatile boolean running;
+    private volatile Path snapshots; // null := the commands `save` and `load` are disabled
+    private long sessions;
+
+
+    /**
+     * Creates a new server listening on the given port
+     * @param port TCP port (0 := any free port)
+     * @param torus Indicates, whether the game boards are tori
+     * @throws IOException Thrown, if the port could not be bound
+     */
+    public GameServer(int port, boolean torus) throws IOException
+    {
+        super();
+
+        this.torus = torus;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(port));
+        this.server.configureBlocking(false);
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "server-worker");
+
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+        this.running = true;
+    }
+
+    /**
+     * Sets the directory, in which the sessions of new connections store their snapshots (see
+     * <code>Session.setSnapshotDirectory</code>)
+     * @param directory Snapshot directory or null, if the commands `save` and `load` are disabled
+     */
+    public void setSnapshotDirectory(Path directory)
+    {
+        this.snapshots = directory;
+    }
+
+    /**
+     * The server's entry point
+     * @param args Command line arguments: `standard` or `torus`, an optional port, an optional tablebase file and an
+     * optional snapshot directory <code>snapshots=&lt;path&gt;</code>
+     */
+    public static void main(String[] args)
+    {
+        if ((args.length < 1) || (!args[0].equalsIgnoreCase("torus") && !args[0].equalsIgnoreCase("standard")))
+        {
+            Final02.out("Error, Expected `torus` or `standard` as first argument.");
+
+            System.exit(1);
+            return;
+        }
+
+        try
+        {
+            GameServer server = new GameServer(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT,
+                                               args[0].equalsIgnoreCase("torus"));
+
+            for (int i = 2; i < args.length; i++)
+                if (args[i].startsWith("snapshots="))
+                    server.setSnapshotDirectory(Paths.get(args[i].substring(10)));
+                else
+                    Session.setTablebase(Tablebase.open(Paths.get(args[i])));
+
+            Final02.out("Listening on port %d", server.getPort());
+
+            server.run();
+        }
+        catch (NumberFormatException ex)
+        {
+            Final02.out("Error, The port must be an integer value.");
+
+            System.exit(1);
+        }
+        catch (IOException | InvalidPathException ex)
+        {
+            Final02.out("Error, %s", ex.getMessage());
+
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the port, on which the server is listening
+     * @return TCP port
+     */
+    public int getPort()
+    {
+        return this.server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of sessions accepted so far
+     * @return Session count
+     */
+    public long getSessions()
+    {
+        return this.sessions;
+    }
+
+    /**
+     * Serves all connections until the server is stopped
+     * @throws IOException Thrown, if the selector fails
+     */
+    public void run() throws IOException
+    {
+        try
+        {
+            while (this.running)
+            {
+                this.selector.select();
+
+                SelectionKey done;
+
+                while ((done = this.completed.poll()) != null) // connections, whose search has produced responses
+                    try
+                    {
+                        if (done.isValid())
+                            write(done);
+                    }
+                    catch (IOException ex)
+                    {
+                        close(done);
+                    }
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+
+                    keys.remove();
+
+                    try
+                    {
+                        if (!key.isValid())
+                            continue;
+                        else if (key.isAcceptable())
+                            accept();
+                        else
+                        {
+                            if (key.isReadable())
+                                read(key);
+
+                            if (key.isValid() && key.isWritable())
+                                write(key);
+                        }
+                    }
+                    catch (IOException ex)
+                    {
+                        close(key);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            this.workers.shutdownNow();
+
+            for (SelectionKey key : this.selector.keys())
+                key.channel().close();
+
+            this.selector.close();
+        }
+    }
+
+    /**
+     * Stops the server and closes all connections
+     */
+    public void stop()
+    {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    // accepts all pending connections
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+
+        while ((channel = this.server.accept()) != null)
+        {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+
+            key.attach(new Connection(this, key));
+
+            this.sessions++;
+        }
+    }
+
+    // reads a chunk of the given connection and executes (or queues) all complete command lines
+    private void read(SelectionKey key) throws IOException
+    {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection con = (Connection) key.attachment();
+
+        // a single chunk is read, so that the responses to it are bounded, before the responses are written
+        this.input.clear();
+
+        int n = channel.read(this.input);
+
+        this.input.flip();
+
+        while (this.input.hasRemaining() && !con.closing)
+            con.receive(this.input.get());
+
+        if (n < 0) // the client has closed the connection
+            con.closing = true;
+
+        write(key);
+    }
+
+    // writes the pending responses of the given connection and selects the next operation
+    private void write(SelectionKey key) throws IOException
+    {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection con = (Connection) key.attachment();
+        boolean pending;
+        boolean busy;
+
+        synchronized (con)
+        {
+            con.output.flip();
+            channel.write(con.output);
+            con.output.compact();
+
+            pending = con.output.position() > 0;
+            busy = con.busy;
+        }
+
+        if (pending)
+            key.interestOps(SelectionKey.OP_WRITE);
+        else if (con.closing)
+            close(key);
+        else if (busy) // the worker posts the connection, when its queue has been executed
+            key.interestOps(0);
+        else
+            key.interestOps(SelectionKey.OP_READ);
+    }
+
+    // hands the given connection back to the selector thread
+    private void post(SelectionKey key)
+    {
+        this.completed.add(key);
+        this.selector.wakeup();
+    }
+
+    // closes the given connection
+    private static void close(SelectionKey key)
+    {
+        key.cancel();
+
+        try
+        {
+            key.channel().close();
+        }
+        catch (IOException ex)
+        {
+            // the connection is closed anyway
+        }
+    }
+
+    // the state of a single connection (the session is used by a single thread at a time: the selector thread or,
+    // while the connection is busy, a worker thread)
+    private static final class Connection implements Output, Runnable
+    {
+        private final GameServer server;
+        private final SelectionKey key;
+        private final Session session;
+        private final Queue<byte[]> pending = new ArrayDeque<byte[]>(); // command lines waiting for a running search
+        private byte[] line = new byte[0x80];
+        private int length;
+        private ByteBuffer output = ByteBuffer.allocate(0x400);
+        private boolean busy; // a worker executes the pending command lines
+        private volatile boolean closing;
+
+
+        // creates a new connection with its own session
+        Connection(GameServer server, SelectionKey key)
+        {
+            this.server = server;
+            this.key = key;
+            this.session = new Session(server.torus, this);
+            this.session.setSnapshotDirectory(server.snapshots);
+        }
+
+        // processes the given received byte
+        void receive(byte b)
+        {
+            if (b != '\n')
+            {
+                if (this.length == MAX_LINE)
+                {
+                    printLine("Error, The command is too long.");
+
+                    this.closing = true;
+                }
+                else
+                {
+                    if (this.length == this.line.length)
+                        this.line = Arrays.copyOf(this.line, Math.min(this.length * 2, MAX_LINE));
+
+                    this.line[this.length++] = b;
+                }
+
+                return;
+            }
+
+            int end = (this.length > 0) && (this.line[this.length - 1] == '\r') ? this.length - 1 : this.length;
+
+            this.length = 0;
+
+            synchronized (this)
+            {
+                if (this.busy || Session.isSearch(this.line, 0, end))
+                {
+                    this.pending.add(Arrays.copyOf(this.line, end));
+
+                    if (!this.busy)
+                    {
+                        this.busy = true;
+                        this.server.workers.execute(this);
+                    }
+
+                    return;
+                }
+            }
+
+            execute(this.line, end);
+        }
+
+        // executes the pending command lines on a worker thread
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                byte[] command;
+
+                synchronized (this)
+                {
+                    command = this.closing ? null : this.pending.poll();
+
+                    if (command == null)
+                    {
+                        this.pending.clear();
+                        this.busy = false;
+
+                        break;
+                    }
+                }
+
+                execute(command, command.length);
+                this.server.post(this.key);
+            }
+
+            this.server.post(this.key);
+        }
+
+        // executes the given command line
+        private void execute(byte[] command, int end)
+        {
+            try
+            {
+                if (!this.session.execute(command, 0, end, CHARSET))
+                    this.closing = true;
+            }
+            catch (RuntimeException ex)
+            {
+                printLine("Error, Some internal error occured. Pray to god/jesus or retry the operation an other time.");
+
+                this.closing = true;
+            }
+        }
+
+        @Override
+        public synchronized void printLine(CharSequence msg)
+        {
+            if (this.output.position() > MAX_OUTPUT) // the client does not read its responses
+            {
+                this.closing = true;
+
+                return;
+            }
+
+            int count = msg.length();
+
+            reserve(count + 1);
+
+            for (int i = 0; i < count; i++)
+                if (msg.charAt(i) >= 0x80) // only ASCII responses are copied directly
+                {
+                    byte[] bytes = msg.toString().getBytes(CHARSET);
+
+                    this.output.position(this.output.position() - i);
+                    reserve(bytes.length + 1);
+                    this.output.put(bytes);
+
+                    break;
+                }
+                else
+                    this.output.put((byte) msg.charAt(i));
+
+            this.output.put((byte) '\n');
+        }
+
+        // ensures, that the output buffer can hold the given number of additional bytes
+        private void reserve(int count)
+        {
+            if (this.output.remaining() < count)
+            {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(this.output.capacity() * 2,
+                                                                this.output.position() + count));
+
+                this.output.flip();
+                grown.put(this.output);
+                this.output = grown;
+            }
+        }
+    }
+}
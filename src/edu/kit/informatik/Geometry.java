@@ -0,0 +1,212 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precomputed lookup tables for a game board geometry (board size and torus/standard mode).<br/>
+ * Instances are immutable and shared between all boards of the same geometry.
+ * @author Unknown6656
+ * @version 1
+ */
+public final class Geometry
+{
+    /**
+     * The number of cells in a winning line
+     */
+    public static final int LENGTH = 4;
+    /**
+     * The number of neighbours stored per cell (-1 marks a neighbour outside the board)
+     */
+    public static final int NEIGHBOURS = 8;
+    private static final int[][] DIRECTIONS = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { -1, 1 } }; // { dx, dy }
+    private static final ConcurrentMap<Integer, Geometry> CACHE = new ConcurrentHashMap<Integer, Geometry>();
+    private final int size;
+    private final boolean torus;
+    private final int cells;
+    private final int windows;
+    private final int[] windowCells; // window * LENGTH + i --> flat cell index
+    private final int[] cellStart; // cell --> first entry inside `cellWindows`
+    private final int[] cellWindows; // all windows touching a cell, grouped by cell
+    private final int[] neighbours; // cell * NEIGHBOURS + i --> flat cell index or -1
+
+
+    // creates the tables for the given geometry
+    private Geometry(int size, boolean torus)
+    {
+        super();
+
+        this.size = size;
+        this.torus = torus;
+        this.cells = size * size;
+
+        int count = 0;
+        int[] tmp = new int[DIRECTIONS.length * cells * LENGTH];
+        int[] perCell = new int[cells];
+
+        if (size >= LENGTH)
+            for (int[] dir : DIRECTIONS)
+                for (int y = 0; y < size; y++)
+                    for (int x = 0; x < size; x++)
+                    {
+                        int ex = x + dir[0] * (LENGTH - 1);
+                        int ey = y + dir[1] * (LENGTH - 1);
+
+                        if (!torus && ((ex < 0) || (ex >= size) || (ey >= size)))
+                            continue;
+
+                        for (int i = 0; i < LENGTH; i++)
+                        {
+                            int cell = Final02.mod(y + dir[1] * i, size) * size + Final02.mod(x + dir[0] * i, size);
+
+                            tmp[count * LENGTH + i] = cell;
+                            perCell[cell]++;
+                        }
+
+                        count++;
+                    }
+
+        this.windows = count;
+        this.windowCells = new int[count * LENGTH];
+        this.cellStart = new int[cells + 1];
+        this.cellWindows = new int[count * LENGTH];
+
+        System.arraycopy(tmp, 0, this.windowCells, 0, this.windowCells.length);
+
+        for (int c = 0; c < cells; c++)
+            this.cellStart[c + 1] = this.cellStart[c] + perCell[c];
+
+        int[] fill = new int[cells];
+
+        for (int w = 0; w < count; w++)
+            for (int i = 0; i < LENGTH; i++)
+            {
+                int cell = this.windowCells[w * LENGTH + i];
+
+                this.cellWindows[this.cellStart[cell] + fill[cell]++] = w;
+            }
+
+        this.neighbours = new int[cells * NEIGHBOURS];
+
+        for (int y = 0, c = 0; y < size; y++)
+            for (int x = 0; x < size; x++, c++)
+                for (int dy = -1, i = 0; dy <= 1; dy++)
+                    for (int dx = -1; dx <= 1; dx++)
+                        if ((dx != 0) || (dy != 0))
+                            this.neighbours[c * NEIGHBOURS + i++] = neighbour(x + dx, y + dy);
+    }
+
+    /**
+     * Returns the (shared) geometry for the given board size and mode
+     * @param size Game board size
+     * @param torus Indicates, whether the board is a torus
+     * @return Geometry
+     */
+    public static Geometry get(int size, boolean torus)
+    {
+        Integer key = (size << 1) | (torus ? 1 : 0);
+        Geometry res = CACHE.get(key);
+
+        if (res == null)
+        {
+            CACHE.putIfAbsent(key, new Geometry(size, torus));
+            res = CACHE.get(key);
+        }
+
+        return res;
+    }
+
+    /**
+     * Returns the game board size
+     * @return Game board size
+     */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns, whether the geometry describes a torus
+     * @return true == torus, false == standard
+     */
+    public boolean isTorus()
+    {
+        return this.torus;
+    }
+
+    /**
+     * Returns the number of cells (size * size)
+     * @return Cell count
+     */
+    public int cells()
+    {
+        return this.cells;
+    }
+
+    /**
+     * Returns the number of 4-cell windows
+     * @return Window count
+     */
+    public int windows()
+    {
+        return this.windows;
+    }
+
+    /**
+     * Returns the table of all window cells: The cells of window <code>w</code> are stored at the indices
+     * <code>w * LENGTH</code> to <code>w * LENGTH + LENGTH - 1</code>.<br/>
+     * The returned array is shared and must not be modified.
+     * @return Window cell table
+     */
+    public int[] windowCells()
+    {
+        return this.windowCells;
+    }
+
+    /**
+     * Returns the start offsets into <code>cellWindows()</code>: The windows touching the cell <code>c</code> are
+     * stored at the indices <code>cellStart()[c]</code> (incl.) to <code>cellStart()[c + 1]</code> (excl.).<br/>
+     * The returned array is shared and must not be modified.
+     * @return Offset table
+     */
+    public int[] cellStart()
+    {
+        return this.cellStart;
+    }
+
+    /**
+     * Returns the indices of all windows touching a cell, grouped by cell (see <code>cellStart()</code>).<br/>
+     * The returned array is shared and must not be modified.
+     * @return Window index table
+     */
+    public int[] cellWindows()
+    {
+        return this.cellWindows;
+    }
+
+    /**
+     * Returns the table of adjacent cells: The neighbours of cell <code>c</code> are stored at the indices
+     * <code>c * NEIGHBOURS</code> to <code>c * NEIGHBOURS + NEIGHBOURS - 1</code>.<br/>
+     * The returned array is shared and must not be modified.
+     * @return Neighbour table
+     */
+    public int[] neighbours()
+    {
+        return this.neighbours;
+    }
+
+    // returns the flat index of the given (possibly wrapped) position or -1, if it lies outside the board
+    private int neighbour(int x, int y)
+    {
+        if (this.torus)
+            return Final02.mod(y, size) * size + Final02.mod(x, size);
+        else if ((x < 0) || (y < 0) || (x >= size) || (y >= size))
+            return -1;
+        else
+            return y * size + x;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.Arrays;
+
+/**
+ * A latency histogram with logarithmic buckets in the style of an HDR histogram: Every power of two is divided into
+ * <code>2 ^ SUB_BITS</code> linear sub-buckets, so every recorded value is kept with a relative error below
+ * <code>2 ^ -SUB_BITS</code> over the whole range of <code>long</code> values. Recording a value is a constant number
+ * of bit operations and never allocates memory.<br/>
+ * The histogram is not thread-safe.
+ * @author Unknown6656
+ * @version 1
+ */
+public class LatencyHistogram
+{
+    /**
+     * The number of bits used for the linear sub-buckets of every power of two
+     */
+    public static final int SUB_BITS = 5;
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+
+    /**
+     * Creates a new empty histogram
+     */
+    public LatencyHistogram()
+    {
+        super();
+    }
+
+    /**
+     * Records the given value
+     * @param value Value (negative values are recorded as 0)
+     */
+    public void record(long value)
+    {
+        long v = Math.max(value, 0);
+
+        this.counts[index(v)]++;
+        this.count++;
+        this.sum += v;
+        this.min = Math.min(this.min, v);
+        this.max = Math.max(this.max, v);
+    }
+
+    /**
+     * Removes all recorded values
+     */
+    public void reset()
+    {
+        Arrays.fill(this.counts, 0L);
+
+        this.count = 0;
+        this.sum = 0;
+        this.min = Long.MAX_VALUE;
+        this.max = 0;
+    }
+
+    /**
+     * Returns the number of recorded values
+     * @return Value count
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Returns the smallest recorded value
+     * @return Minimum or 0, if no value has been recorded
+     */
+    public long getMin()
+    {
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    /**
+     * Returns the largest recorded value
+     * @return Maximum or 0, if no value has been recorded
+     */
+    public long getMax()
+    {
+        return this.max;
+    }
+
+    /**
+     * Returns the arithmetic mean of all recorded values
+     * @return Mean or 0, if no value has been recorded
+     */
+    public double getMean()
+    {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * Returns the value, below or at which the given percentage of all recorded values lies (the largest value of
+     * the containing bucket, but never more than the maximum)
+     * @param percentile Percentage between 0 and 100
+     * @return Percentile or 0, if no value has been recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long rank = Math.max((long) Math.ceil(percentile / 100 * this.count), 1);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += this.counts[i];
+
+            if (seen >= rank)
+                return Math.min(i + 1 < BUCKETS ? lowest(i + 1) - 1 : Long.MAX_VALUE, this.max);
+        }
+
+        return 0;
+    }
+
+    // returns the bucket of the given non-negative value
+    private static int index(long value)
+    {
+        int shift = Math.max(63 - Long.numberOfLeadingZeros(value) - SUB_BITS, 0);
+
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    // returns the smallest value of the given bucket
+    private static long lowest(int index)
+    {
+        int shift = Math.max((index >>> SUB_BITS) - 1, 0);
+
+        return (long) (index - (shift << SUB_BITS)) << shift;
+    }
+}
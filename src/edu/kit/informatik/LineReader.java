@@ -0,0 +1,143 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads lines from an input stream without allocating a string per line: Every line is exposed as a range of the
+ * reader's internal byte buffer, which is valid until the next line is read.<br/>
+ * Lines are terminated by <code>\n</code>, <code>\r</code> or <code>\r\n</code> (like
+ * <code>BufferedReader.readLine</code>).
+ * @author Unknown6656
+ * @version 1
+ */
+public class LineReader
+{
+    private final InputStream in;
+    private byte[] buffer = new byte[0x10000];
+    private int position;
+    private int limit;
+    private int start;
+    private int end;
+    private boolean skipLF;
+
+
+    /**
+     * Creates a new reader
+     * @param in Underlying input stream
+     */
+    public LineReader(InputStream in)
+    {
+        super();
+
+        this.in = in;
+    }
+
+    /**
+     * Reads the next line
+     * @return False, if the end of the stream has been reached
+     * @throws IOException Thrown, if the underlying stream could not be read
+     */
+    public boolean next() throws IOException
+    {
+        int lineStart = this.position;
+        int i = this.position;
+
+        while (true)
+        {
+            for (; i < this.limit; i++)
+            {
+                byte b = this.buffer[i];
+
+                if (this.skipLF)
+                {
+                    this.skipLF = false;
+
+                    if (b == '\n')
+                    {
+                        lineStart++;
+
+                        continue;
+                    }
+                }
+
+                if ((b == '\n') || (b == '\r'))
+                {
+                    this.start = lineStart;
+                    this.end = i;
+                    this.position = i + 1;
+                    this.skipLF = b == '\r';
+
+                    return true;
+                }
+            }
+
+            // the buffer contains no complete line: move the partial line to the front and read more
+            if (lineStart > 0)
+            {
+                System.arraycopy(this.buffer, lineStart, this.buffer, 0, this.limit - lineStart);
+
+                i -= lineStart;
+                this.limit -= lineStart;
+                lineStart = 0;
+            }
+            else if (this.limit == this.buffer.length)
+                this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+
+            int n = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+
+            if (n < 0)
+            {
+                this.position = this.limit;
+                this.start = lineStart;
+                this.end = this.limit;
+
+                return lineStart < this.limit; // the last line has no terminator
+            }
+
+            this.limit += n;
+        }
+    }
+
+    /**
+     * Indicates, whether the next line can (probably) be read without blocking
+     * @return True, if buffered or available input exists
+     * @throws IOException Thrown, if the underlying stream could not be queried
+     */
+    public boolean ready() throws IOException
+    {
+        return (this.position < this.limit) || (this.in.available() > 0);
+    }
+
+    /**
+     * Returns the internal buffer, which contains the current line
+     * @return Buffer
+     */
+    public byte[] buffer()
+    {
+        return this.buffer;
+    }
+
+    /**
+     * Returns the start index of the current line inside the buffer
+     * @return Start index (inclusive)
+     */
+    public int start()
+    {
+        return this.start;
+    }
+
+    /**
+     * Returns the end index of the current line inside the buffer
+     * @return End index (exclusive, the line terminator is excluded)
+     */
+    public int end()
+    {
+        return this.end;
+    }
+}
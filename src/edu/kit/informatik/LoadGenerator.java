@@ -0,0 +1,257 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * A load generator for the <code>GameServer</code>: It plays many random games over concurrent loopback
+ * connections and verifies every response stream against a local <code>Session</code>, which executed the same
+ * commands.
+ * @author Unknown6656
+ * @version 1
+ */
+public final class LoadGenerator
+{
+    private static final int COMMANDS = 48;
+    private final boolean torus;
+    private final InetSocketAddress address;
+    private final Random random;
+    private final ByteBuffer input = ByteBuffer.allocate(0x10000);
+    private int started;
+    private int completed;
+    private int mismatches;
+    private long commands;
+
+
+    /**
+     * Creates a new load generator
+     * @param torus Indicates, whether the server's game boards are tori
+     * @param port The server's TCP port on the loopback interface
+     * @param seed Random seed of the generated games
+     */
+    public LoadGenerator(boolean torus, int port, long seed)
+    {
+        super();
+
+        this.torus = torus;
+        this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * The load generator's entry point
+     * @param args Command line arguments: `standard` or `torus`, the server's port, the optional number of sessions
+     * and the optional number of concurrent connections (separated by spaces)
+     */
+    public static void main(String[] args)
+    {
+        if ((args.length < 2) || (!args[0].equalsIgnoreCase("torus") && !args[0].equalsIgnoreCase("standard")))
+        {
+            Final02.out("Error, Expected `torus` or `standard` and the server's port as arguments.");
+
+            System.exit(1);
+            return;
+        }
+
+        try
+        {
+            int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+            LoadGenerator gen = new LoadGenerator(args[0].equalsIgnoreCase("torus"), Integer.parseInt(args[1]), 0);
+            long start = System.nanoTime();
+
+            gen.run(sessions, concurrency);
+
+            long millis = Math.max((System.nanoTime() - start) / 1000000, 1);
+
+            Final02.out("%d sessions, %d commands, %d ms, %d sessions/s, %d commands/s, %d mismatches",
+                        gen.completed, gen.commands, millis, gen.completed * 1000L / millis,
+                        gen.commands * 1000 / millis, gen.mismatches);
+
+            System.exit(gen.mismatches == 0 ? 0 : 2);
+        }
+        catch (NumberFormatException ex)
+        {
+            Final02.out("Error, At least one argument could not be parsed as an integer value.");
+
+            System.exit(1);
+        }
+        catch (IOException ex)
+        {
+            Final02.out("Error, %s", ex.getMessage());
+
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays the given number of sessions
+     * @param sessions Total number of sessions
+     * @param concurrency Maximum number of concurrently open connections
+     * @return Number of sessions, whose responses did not match the expected ones
+     * @throws IOException Thrown, if a connection fails
+     */
+    public int run(int sessions, int concurrency) throws IOException
+    {
+        Selector selector = Selector.open();
+
+        try
+        {
+            while (this.started < Math.min(sessions, concurrency))
+                connect(selector);
+
+            while (this.completed < sessions)
+            {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    Client client = (Client) key.attachment();
+
+                    keys.remove();
+
+                    if (key.isConnectable() && channel.finishConnect())
+                        key.interestOps(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+
+                    if (key.isValid() && key.isWritable())
+                    {
+                        channel.write(client.request);
+
+                        if (!client.request.hasRemaining())
+                            key.interestOps(SelectionKey.OP_READ);
+                    }
+
+                    if (key.isValid() && key.isReadable() && receive(channel, client))
+                    {
+                        key.cancel();
+                        channel.close();
+
+                        this.completed++;
+
+                        if (this.started < sessions)
+                            connect(selector);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            for (SelectionKey key : selector.keys())
+                key.channel().close();
+
+            selector.close();
+        }
+
+        return this.mismatches;
+    }
+
+    // opens a new connection for a new random game
+    private void connect(Selector selector) throws IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.connect(this.address);
+        channel.register(selector, SelectionKey.OP_CONNECT, script());
+
+        this.started++;
+    }
+
+    // reads the available responses and returns true, if the server has closed the connection
+    private boolean receive(SocketChannel channel, Client client) throws IOException
+    {
+        int n;
+
+        this.input.clear();
+
+        while ((n = channel.read(this.input)) > 0)
+        {
+            client.response.write(this.input.array(), 0, this.input.position());
+            this.input.clear();
+        }
+
+        if (n >= 0)
+            return false;
+
+        if (!Arrays.equals(client.expected, client.response.toByteArray()))
+            this.mismatches++;
+
+        return true;
+    }
+
+    // generates a random game and its expected responses
+    private Client script()
+    {
+        final StringBuilder expected = new StringBuilder();
+        StringBuilder request = new StringBuilder();
+        Session session = new Session(this.torus, new Output()
+        {
+            @Override
+            public void printLine(CharSequence line)
+            {
+                expected.append(line)
+                        .append('\n');
+            }
+        });
+        int range = this.torus ? 10 : 7; // includes some invalid coordinates
+
+        for (int i = 0; i < COMMANDS; i++)
+        {
+            int kind = this.random.nextInt(20);
+            String command;
+
+            if (kind < 9)
+                command = "select " + this.random.nextInt(0x11);
+            else if (kind < 18)
+                command = "place " + (this.random.nextInt(range) - 1) + ";" + (this.random.nextInt(range) - 1);
+            else if (kind < 19)
+                command = (this.random.nextBoolean() ? "rowprint " : "colprint ") + this.random.nextInt(range);
+            else
+                command = "bag";
+
+            session.execute(command);
+            request.append(command)
+                   .append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        request.append("quit\n");
+
+        this.commands += COMMANDS + 1;
+
+        return new Client(request.toString(), expected.toString());
+    }
+
+    // the state of a single connection
+    private static final class Client
+    {
+        private final ByteBuffer request;
+        private final byte[] expected;
+        private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+
+        // creates a new client with the given request and expected response
+        Client(String request, String expected)
+        {
+            this.request = ByteBuffer.wrap(request.getBytes(GameServer.CHARSET));
+            this.expected = expected.getBytes(GameServer.CHARSET);
+        }
+    }
+}
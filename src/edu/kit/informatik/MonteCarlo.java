@@ -0,0 +1,514 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A Monte Carlo tree search engine using UCT selection and random playouts.<br/>
+ * The search is root-parallel: Every worker thread builds its own tree on its own board copy until the time budget
+ * is used up, afterwards the statistics of the root moves of all trees are merged.
+ * @author Unknown6656
+ * @version 1
+ */
+public class MonteCarlo
+{
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int[] STRIDES = { 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47 };
+    private final int threads;
+    private final ExecutorService executor;
+    private long playouts;
+    private long millis;
+    private int bestCell;
+    private int bestPiece;
+    private double score;
+
+
+    /**
+     * Creates a new engine with one worker thread per available processor
+     */
+    public MonteCarlo()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new engine with the given number of worker threads
+     * @param threads Number of worker threads
+     */
+    public MonteCarlo(int threads)
+    {
+        super();
+
+        if (threads < 1)
+            throw new IllegalArgumentException("The thread count must be positive.");
+
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "mcts-worker");
+
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Searches the best move for the player to move within the given time budget. The given board is not modified.
+     * @param board Game board
+     * @param budget Time budget in milliseconds
+     */
+    public void search(GameBoard board, long budget)
+    {
+        long start = System.nanoTime();
+        final long deadline = Solver.deadline(start, budget);
+        final int bag = board.getBagMask();
+        final int piece = board.getSelected() == null ? -1 : board.getSelected().value();
+        List<Future<Node>> futures = new ArrayList<Future<Node>>(this.threads);
+
+        for (int i = 0; i < this.threads; i++)
+        {
+            final GameBoard copy = new GameBoard(board);
+            final long seed = start + i;
+
+            futures.add(this.executor.submit(new Callable<Node>()
+            {
+                @Override
+                public Node call()
+                {
+                    return new Worker(copy, piece, bag, seed).run(deadline);
+                }
+            }));
+        }
+
+        // merge the root statistics of all trees
+        int[] visits = new int[board.getSize() * board.getSize() * 0x10 + 0x10];
+        double[] rewards = new double[visits.length];
+
+        this.playouts = 0;
+
+        for (Future<Node> future : futures)
+        {
+            Node root = await(future);
+
+            this.playouts += root.visits;
+
+            for (int i = 0; i < root.childCount; i++)
+            {
+                Node child = root.children[i];
+
+                visits[child.move + 0x10] += child.visits;
+                rewards[child.move + 0x10] += child.reward;
+            }
+
+            if (root.winningCell >= 0)
+                visits[0] = root.winningCell + 1;
+        }
+
+        this.bestCell = -1;
+        this.bestPiece = -1;
+        this.score = 0;
+
+        if (visits[0] > 0) // the piece can be placed on a winning cell
+        {
+            this.bestCell = visits[0] - 1;
+            this.score = 1;
+        }
+        else
+        {
+            int best = -1;
+
+            for (int i = 0x10; i < visits.length; i++)
+                if ((visits[i] > 0) && ((best < 0) || (visits[i] > visits[best])))
+                    best = i;
+
+            if (best >= 0)
+            {
+                int move = best - 0x10;
+
+                this.bestCell = piece < 0 ? -1 : move >>> 4;
+                this.bestPiece = move & 0x0f;
+                this.score = rewards[best] / visits[best];
+            }
+        }
+
+        this.millis = (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Stops all worker threads
+     */
+    public void shutdown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Returns the number of worker threads
+     * @return Thread count
+     */
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    /**
+     * Returns the cell (y * size + x) on which the selected piece should be placed
+     * @return Flat cell index or -1, if no piece had to be placed
+     */
+    public int getBestCell()
+    {
+        return this.bestCell;
+    }
+
+    /**
+     * Returns the piece, which should be selected for the opponent
+     * @return Piece value or -1, if no piece has to be selected
+     */
+    public int getBestPiece()
+    {
+        return this.bestPiece;
+    }
+
+    /**
+     * Returns the expected score of the best move for the player to move (1 := win, 0.5 := draw, 0 := loss)
+     * @return Expected score
+     */
+    public double getScore()
+    {
+        return this.score;
+    }
+
+    /**
+     * Returns the number of playouts of the last search
+     * @return Playout count
+     */
+    public long getPlayouts()
+    {
+        return this.playouts;
+    }
+
+    /**
+     * Returns the duration of the last search
+     * @return Milliseconds
+     */
+    public long getMillis()
+    {
+        return this.millis;
+    }
+
+    /**
+     * Returns the number of playouts per second of the last search
+     * @return Playouts per second
+     */
+    public long getPlayoutsPerSecond()
+    {
+        return this.playouts * 1000 / Math.max(this.millis, 1);
+    }
+
+    // waits for the given worker result
+    private static Node await(Future<Node> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(ex);
+        }
+        catch (ExecutionException ex)
+        {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    // a search tree node
+    private static final class Node
+    {
+        private final Node parent;
+        private final int move; // cell * 16 + next piece (or only the next piece at a selection)
+        private Node[] children;
+        private int childCount;
+        private int moves = -1; // number of moves (-1 := not yet expanded)
+        private int offset; // the moves are expanded in the order (offset + i * stride) % moves
+        private int stride;
+        private int visits;
+        private double reward; // from the perspective of the player who made `move`
+        private int winningCell = -1; // a cell on which the player to move wins immediately
+
+
+        // creates a new node
+        Node(Node parent, int move)
+        {
+            this.parent = parent;
+            this.move = move;
+        }
+    }
+
+    // builds a single search tree
+    private static final class Worker
+    {
+        private final GameBoard board;
+        private final int cells;
+        private final int rootPiece;
+        private final int rootBag;
+        private final Random random;
+        private final int[] path; // cells placed during the current iteration
+        private int depth;
+        private int piece;
+        private int bag;
+
+
+        // creates a new worker for the given board (copy)
+        Worker(GameBoard board, int piece, int bag, long seed)
+        {
+            this.board = board;
+            this.cells = board.getSize() * board.getSize();
+            this.rootPiece = piece;
+            this.rootBag = bag;
+            this.random = new Random(seed);
+            this.path = new int[this.cells];
+        }
+
+        // runs iterations until the deadline has passed and returns the root node
+        Node run(long deadline)
+        {
+            Node root = new Node(null, -1);
+
+            do
+                iterate(root);
+            while ((deadline - System.nanoTime() > 0) && (root.winningCell < 0)
+                   && !Thread.currentThread().isInterrupted());
+
+            return root;
+        }
+
+        // performs a single selection-expansion-playout-backpropagation cycle
+        private void iterate(Node root)
+        {
+            Node node = root;
+
+            this.depth = 0;
+            this.piece = this.rootPiece;
+            this.bag = this.rootBag;
+
+            if (node.moves < 0)
+                expand(node);
+
+            while ((node.childCount == node.moves) && (node.childCount > 0))
+            {
+                node = select(node);
+                apply(node.move);
+
+                if (node.moves < 0)
+                    expand(node);
+            }
+
+            if (node.childCount < node.moves)
+            {
+                Node child = new Node(node, moveAt((node.offset + node.childCount * node.stride) % node.moves));
+
+                if (node.childCount == node.children.length)
+                    node.children = Arrays.copyOf(node.children, Math.min(node.children.length * 2, node.moves));
+
+                node.children[node.childCount++] = child;
+                node = child;
+                apply(node.move);
+                expand(node);
+            }
+
+            double result = playout(); // for the player to move at `node`
+
+            while (this.depth > 0)
+                this.board.take(this.path[--this.depth]);
+
+            for (; node != null; node = node.parent)
+            {
+                result = 1 - result;
+                node.visits++;
+                node.reward += result;
+            }
+        }
+
+        // counts the moves of the given node (which must be the current state)
+        private void expand(Node node)
+        {
+            int free = 0;
+            boolean wins = (this.piece >= 0) && ((this.board.getTracker().threats() & (1 << this.piece)) != 0);
+
+            if (this.piece >= 0)
+                for (int c = 0; c < this.cells; c++)
+                    if (!this.board.isOccupied(c))
+                    {
+                        if (wins && this.board.getTracker().wouldWin(c, this.piece))
+                        {
+                            node.winningCell = c;
+                            node.moves = 0;
+
+                            return;
+                        }
+
+                        free++;
+                    }
+
+            node.moves = (this.piece < 0 ? 1 : free) * Integer.bitCount(this.bag);
+            node.children = new Node[Math.min(node.moves, 4)];
+
+            if (node.moves > 0)
+            {
+                node.offset = this.random.nextInt(node.moves);
+                node.stride = 1;
+
+                for (int stride : STRIDES)
+                    if (node.moves % stride != 0)
+                    {
+                        node.stride = stride;
+
+                        break;
+                    }
+            }
+        }
+
+        // returns the move with the given index (in the order: free cell, bag piece) of the current state
+        private int moveAt(int index)
+        {
+            int pieces = Integer.bitCount(this.bag);
+            int rest = this.bag;
+
+            for (int k = index % pieces; k > 0; k--)
+                rest &= rest - 1;
+
+            int next = Integer.numberOfTrailingZeros(rest);
+
+            if (this.piece < 0)
+                return next;
+
+            int c = -1;
+
+            for (int k = index / pieces; k >= 0; )
+                if (!this.board.isOccupied(++c))
+                    k--;
+
+            return (c << 4) | next;
+        }
+
+        // selects the child with the highest upper confidence bound
+        private Node select(Node node)
+        {
+            double log = Math.log(node.visits);
+            Node best = null;
+            double max = Double.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < node.childCount; i++)
+            {
+                Node child = node.children[i];
+                double ucb = child.reward / child.visits + EXPLORATION * Math.sqrt(log / child.visits);
+
+                if (ucb > max)
+                {
+                    max = ucb;
+                    best = child;
+                }
+            }
+
+            return best;
+        }
+
+        // applies the given move to the current state
+        private void apply(int move)
+        {
+            int next = move & 0x0f;
+
+            if (this.piece >= 0)
+            {
+                this.board.put(move >>> 4, this.piece);
+                this.path[this.depth++] = move >>> 4;
+            }
+
+            this.piece = next;
+            this.bag &= ~(1 << next);
+        }
+
+        // plays random moves until the game ends and returns the result for the player to move at the start
+        private double playout()
+        {
+            double result = 1;
+
+            if (this.piece < 0) // selection only
+            {
+                int next = randomPiece();
+
+                if (next < 0)
+                    return 0.5;
+
+                this.piece = next;
+                this.bag &= ~(1 << next);
+                result = 0;
+            }
+
+            while (true)
+            {
+                int free = 0;
+
+                if ((this.board.getTracker().threats() & (1 << this.piece)) != 0) // the piece completes an open window
+                    return result;
+
+                for (int c = 0; c < this.cells; c++)
+                    if (!this.board.isOccupied(c))
+                        free++;
+
+                if ((free == 0) || (this.bag == 0))
+                    return 0.5;
+
+                int k = this.random.nextInt(free);
+                int c = -1;
+
+                while (k >= 0)
+                    if (!this.board.isOccupied(++c))
+                        k--;
+
+                this.board.put(c, this.piece);
+                this.path[this.depth++] = c;
+                this.piece = randomPiece();
+                this.bag &= ~(1 << this.piece);
+                result = 1 - result;
+            }
+        }
+
+        // returns a random piece from the bag or -1, if the bag is empty
+        private int randomPiece()
+        {
+            int count = Integer.bitCount(this.bag);
+
+            if (count == 0)
+                return -1;
+
+            int k = this.random.nextInt(count);
+            int rest = this.bag;
+
+            while (k-- > 0)
+                rest &= rest - 1;
+
+            return Integer.numberOfTrailingZeros(rest);
+        }
+    }
+}
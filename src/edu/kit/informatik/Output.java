@@ -0,0 +1,19 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+/**
+ * Receives the responses of a game session
+ * @author Unknown6656
+ * @version 1
+ */
+public interface Output
+{
+    /**
+     * Writes the given response line
+     * @param line Response (without line terminator)
+     */
+    void printLine(CharSequence line);
+}
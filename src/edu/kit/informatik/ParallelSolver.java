@@ -0,0 +1,486 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A multi-threaded variant of the <code>Solver</code>, which distributes the search tree across a
+ * <code>ForkJoinPool</code> in the "young brothers wait" style: At every node above the split depth, the first move
+ * is searched alone to establish a score bound, before all remaining moves are searched in parallel. Every task
+ * works on its own copy of the game board. All workers share one lock-free transposition table.
+ * @author Unknown6656
+ * @version 1
+ */
+public class ParallelSolver
+{
+    /**
+     * The default number of plies, in which the search tree is split into parallel tasks
+     */
+    public static final int DEFAULT_SPLIT_DEPTH = 2;
+    private final int threads;
+    private final int splitDepth;
+    private final ForkJoinPool pool;
+    private final TranspositionTable table;
+    private final ThreadLocal<Solver> workers;
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private volatile Tablebase tablebase;
+    private volatile boolean aborted;
+    private boolean timed;
+    private long deadline; // the value of System.nanoTime(), at which a timed search is aborted
+    private long millis;
+    private int value;
+    private int bestCell;
+    private int bestPiece;
+
+
+    /**
+     * Creates a new parallel solver with the default transposition table size and split depth
+     * @param threads Number of worker threads
+     */
+    public ParallelSolver(int threads)
+    {
+        this(threads, Solver.DEFAULT_TABLE_BITS, DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Creates a new parallel solver
+     * @param threads Number of worker threads
+     * @param bits Transposition table size as power of two
+     * @param splitDepth Number of plies, in which the search tree is split into parallel tasks (at least 1)
+     */
+    public ParallelSolver(int threads, int bits, int splitDepth)
+    {
+        super();
+
+        if ((threads < 1) || (splitDepth < 1))
+            throw new IllegalArgumentException("The thread count and the split depth must be positive.");
+
+        this.threads = threads;
+        this.splitDepth = splitDepth;
+        this.pool = new ForkJoinPool(threads);
+        this.table = new TranspositionTable(bits);
+        this.workers = new ThreadLocal<Solver>()
+        {
+            @Override
+            protected Solver initialValue()
+            {
+                return new Solver(table);
+            }
+        };
+    }
+
+    /**
+     * Solves the given position (see <code>Solver.solve</code>). The given board is not modified.
+     * @param board Game board
+     * @return The position's value for the player to move: 1 := win, 0 := draw, -1 := loss
+     */
+    public int solve(GameBoard board)
+    {
+        return solve(board, 0);
+    }
+
+    /**
+     * Solves the given position (see <code>Solver.solve(GameBoard, long)</code>), but aborts the search, as soon as
+     * the given time budget has been exceeded. The given board is not modified.
+     * @param board Game board
+     * @param budget Time budget in milliseconds (0 := unlimited)
+     * @return The position's value for the player to move: 1 := win, 0 := draw or aborted, -1 := loss
+     */
+    public int solve(GameBoard board, long budget)
+    {
+        long start = System.nanoTime();
+        int bag = board.getBagMask();
+
+        this.timed = budget > 0;
+        this.deadline = Solver.deadline(start, budget);
+        this.aborted = false;
+        this.nodes.set(0);
+        this.probes.set(0);
+        this.hits.set(0);
+        this.bestCell = -1;
+        this.bestPiece = -1;
+
+        if (board.getSelected() != null)
+        {
+            SearchTask root = new SearchTask(board, -1, 0, board.getSelected().value(), bag,
+                                             -Solver.INFINITY, Solver.INFINITY, 0);
+
+            this.value = this.pool.invoke(root);
+            this.bestCell = root.bestCell;
+            this.bestPiece = root.bestNext;
+        }
+        else if (bag != 0)
+        {
+            SelectTask root = new SelectTask(board, bag);
+
+            this.value = this.pool.invoke(root);
+            this.bestPiece = root.bestPiece;
+        }
+        else
+            this.value = 0;
+
+        this.millis = (System.nanoTime() - start) / 1000000;
+
+        if (this.aborted)
+        {
+            this.value = 0;
+            this.bestCell = -1;
+            this.bestPiece = -1;
+        }
+
+        return Integer.signum(this.value);
+    }
+
+    /**
+     * Sets the endgame tablebase, which is consulted by all workers (see <code>Solver.setTablebase</code>)
+     * @param tablebase Tablebase or null
+     */
+    public void setTablebase(Tablebase tablebase)
+    {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Stops all worker threads
+     */
+    public void shutdown()
+    {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Returns, whether the last search has been completed within its time budget
+     * @return True, if the position has been solved
+     */
+    public boolean isSolved()
+    {
+        return !this.aborted;
+    }
+
+    /**
+     * Returns the number of worker threads
+     * @return Thread count
+     */
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    /**
+     * Returns the score of the last solved position (see <code>Solver.WIN</code>)
+     * @return Score
+     */
+    public int getScore()
+    {
+        return this.value;
+    }
+
+    /**
+     * Returns the cell (y * size + x) on which the selected piece should be placed
+     * @return Flat cell index or -1, if no piece had to be placed
+     */
+    public int getBestCell()
+    {
+        return this.bestCell;
+    }
+
+    /**
+     * Returns the piece, which should be selected for the opponent
+     * @return Piece value or -1, if no piece has to be selected
+     */
+    public int getBestPiece()
+    {
+        return this.bestPiece;
+    }
+
+    /**
+     * Returns the number of nodes visited during the last search
+     * @return Node count
+     */
+    public long getNodes()
+    {
+        return this.nodes.get();
+    }
+
+    /**
+     * Returns the duration of the last search
+     * @return Milliseconds
+     */
+    public long getMillis()
+    {
+        return this.millis;
+    }
+
+    /**
+     * Returns the number of visited nodes per second of the last search
+     * @return Nodes per second
+     */
+    public long getNodesPerSecond()
+    {
+        return this.nodes.get() * 1000 / Math.max(this.millis, 1);
+    }
+
+    /**
+     * Returns the transposition table hit rate of the last search
+     * @return Hit rate between 0 and 1
+     */
+    public double getHitRate()
+    {
+        return this.probes.get() == 0 ? 0 : (double) this.hits.get() / this.probes.get();
+    }
+
+    // searches a single node: `placed` is put on `cell` of the parent board (if `cell` >= 0), afterwards `piece` has
+    // to be placed by the player to move
+    private final class SearchTask extends RecursiveTask<Integer>
+    {
+        private static final long serialVersionUID = 1L;
+        private final GameBoard parent;
+        private final int cell;
+        private final int placed;
+        private final int piece;
+        private final int bag;
+        private final int alpha;
+        private final int beta;
+        private final int ply;
+        private int bestCell = -1;
+        private int bestNext = -1;
+
+        // creates a new task, which searches the position after placing `placed` on `cell` of the parent board
+        SearchTask(GameBoard parent, int cell, int placed, int piece, int bag, int alpha, int beta, int ply)
+        {
+            super();
+
+            this.parent = parent;
+            this.cell = cell;
+            this.placed = placed;
+            this.piece = piece;
+            this.bag = bag;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.ply = ply;
+        }
+
+        @Override
+        protected Integer compute()
+        {
+            GameBoard board = new GameBoard(this.parent);
+
+            if (this.cell >= 0)
+                board.put(this.cell, this.placed);
+
+            if (this.ply >= splitDepth)
+            {
+                Solver worker = workers.get();
+                long n = worker.getNodes();
+                long p = worker.getProbes();
+                long h = worker.getHits();
+
+                worker.setTablebase(tablebase);
+
+                int score = worker.search(board, this.piece, this.bag, this.alpha, this.beta, this.ply, timed,
+                                          deadline);
+
+                nodes.addAndGet(worker.getNodes() - n);
+                probes.addAndGet(worker.getProbes() - p);
+                hits.addAndGet(worker.getHits() - h);
+
+                if (worker.isAborted())
+                    aborted = true;
+
+                return score;
+            }
+
+            return split(board);
+        }
+
+        // searches the first move alone and all other moves in parallel
+        private int split(GameBoard board)
+        {
+            int cells = board.getSize() * board.getSize();
+
+            nodes.incrementAndGet();
+
+            if (timed && (System.nanoTime() - deadline > 0))
+                aborted = true;
+
+            if (aborted)
+                return 0;
+
+            if ((board.getTracker().threats() & (1 << this.piece)) != 0) // the piece completes an open window
+            {
+                for (int c = 0; (c < cells) && (this.bestCell < 0); c++)
+                    if (!board.isOccupied(c) && board.getTracker().wouldWin(c, this.piece))
+                        this.bestCell = c;
+
+                return Solver.WIN - this.ply;
+            }
+
+            int free = board.freeCell();
+
+            if ((this.bag == 0) || (free < 0))
+            {
+                this.bestCell = free;
+
+                return 0;
+            }
+
+            long key = board.getHash() ^ Zobrist.selected(this.piece);
+            long entry = table.probe(key);
+            int lower = this.alpha;
+            int upper = this.beta;
+            int ttMove = -1;
+
+            probes.incrementAndGet();
+
+            if (entry != 0L)
+            {
+                int score = TranspositionTable.score(entry, this.ply);
+                int flag = TranspositionTable.flag(entry);
+
+                hits.incrementAndGet();
+                ttMove = TranspositionTable.move(entry);
+
+                if (this.ply > 0)
+                    if (flag == TranspositionTable.EXACT)
+                        return score;
+                    else if ((flag == TranspositionTable.LOWER) && (score > lower))
+                        lower = score;
+                    else if ((flag == TranspositionTable.UPPER) && (score < upper))
+                        upper = score;
+
+                if (lower >= upper)
+                    return score;
+            }
+
+            int[] moves = new int[cells * 0x10];
+            int count = 0;
+
+            if ((ttMove >= 0) && !board.isOccupied(ttMove >>> 4) && ((this.bag & (1 << (ttMove & 0x0f))) != 0))
+                moves[count++] = ttMove;
+
+            for (int c = 0; c < cells; c++)
+                if (!board.isOccupied(c))
+                    for (int n = 0x00; n <= 0x0f; n++)
+                        if (((this.bag & (1 << n)) != 0) && (((c << 4) | n) != ttMove))
+                            moves[count++] = (c << 4) | n;
+
+            // the eldest brother is searched alone
+            int origLower = lower;
+            int best = -child(board, moves[0], lower, upper).compute();
+            int bestMove = moves[0];
+
+            if (best > lower)
+                lower = best;
+
+            // the young brothers wait for the eldest one's bound and are searched in parallel
+            if ((lower < upper) && (count > 1))
+            {
+                List<SearchTask> tasks = new ArrayList<SearchTask>(count - 1);
+
+                for (int i = 1; i < count; i++)
+                    tasks.add(child(board, moves[i], lower, upper));
+
+                for (SearchTask task : tasks)
+                    task.fork();
+
+                boolean cutoff = false;
+
+                for (int i = tasks.size() - 1; i >= 0; i--)
+                {
+                    SearchTask task = tasks.get(i);
+
+                    if (cutoff && task.cancel(false))
+                        continue;
+
+                    int score = -task.join();
+
+                    if (score > best)
+                    {
+                        best = score;
+                        bestMove = moves[i + 1];
+                        cutoff = score >= upper;
+                    }
+                }
+            }
+
+            this.bestCell = bestMove >>> 4;
+            this.bestNext = bestMove & 0x0f;
+
+            if (aborted) // the scores of an aborted search are incomplete
+                return 0;
+
+            table.store(key, bestMove, best <= origLower ? TranspositionTable.UPPER
+                                          : best >= upper ? TranspositionTable.LOWER : TranspositionTable.EXACT,
+                        best, this.ply);
+
+            return best;
+        }
+
+        // creates the task for the given move (cell * 16 + next piece)
+        private SearchTask child(GameBoard board, int move, int lower, int upper)
+        {
+            int next = move & 0x0f;
+
+            return new SearchTask(board, move >>> 4, this.piece, next, this.bag & ~(1 << next),
+                                  -upper, -lower, this.ply + 1);
+        }
+    }
+
+    // searches the selection of a piece for the opponent (if no piece has been selected yet)
+    private final class SelectTask extends RecursiveTask<Integer>
+    {
+        private static final long serialVersionUID = 1L;
+        private final GameBoard board;
+        private final int bag;
+        private int bestPiece = -1;
+
+        // creates a new task for the given board and bag
+        SelectTask(GameBoard board, int bag)
+        {
+            super();
+
+            this.board = board;
+            this.bag = bag;
+        }
+
+        @Override
+        protected Integer compute()
+        {
+            int first = Integer.numberOfTrailingZeros(this.bag);
+            int best = -new SearchTask(this.board, -1, 0, first, this.bag & ~(1 << first),
+                                       -Solver.INFINITY, Solver.INFINITY, 1).compute();
+            List<SearchTask> tasks = new ArrayList<SearchTask>();
+
+            this.bestPiece = first;
+
+            for (int n = first + 1; n <= 0x0f; n++)
+                if ((this.bag & (1 << n)) != 0)
+                    tasks.add(new SearchTask(this.board, -1, 0, n, this.bag & ~(1 << n),
+                                             -Solver.INFINITY, -best, 1));
+
+            invokeAll(tasks);
+
+            for (SearchTask task : tasks)
+            {
+                int score = -task.join();
+
+                if (score > best)
+                {
+                    best = score;
+                    this.bestPiece = task.piece;
+                }
+            }
+
+            return best;
+        }
+    }
+}
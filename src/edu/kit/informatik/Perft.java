@@ -0,0 +1,370 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Counts all action sequences (every selection and every placement is a single action) of a given length, which can
+ * be played from a position, and the games ending within them. The enumeration uses the public actions and the undo
+ * of the <code>GameBoard</code>, so it checks the move generation, the win detection and the undo against each other
+ * and serves as the raw throughput benchmark of the game board.<br/>
+ * In the parallel mode, the tree is split after the first <code>SPLIT</code> actions and the subtrees are counted on
+ * board copies by the worker threads.<br/>
+ * A run can be limited by a time budget: It is aborted (see <code>isComplete</code>), as soon as the budget has been
+ * exceeded. A counter must not be used by more than one thread at a time.
+ * @author Unknown6656
+ * @version 1
+ */
+public class Perft
+{
+    private static final int SPLIT = 2;
+    private static final long MAX_BUDGET = Long.MAX_VALUE / 4000000; // milliseconds, the deadline must not overflow
+    private final int threads;
+    private final ExecutorService executor; // null := serial mode
+    private long sequences;
+    private long wins;
+    private long draws;
+    private long nodes;
+    private long millis;
+    private boolean complete;
+
+
+    /**
+     * Creates a new serial perft counter
+     */
+    public Perft()
+    {
+        this(1);
+    }
+
+    /**
+     * Creates a new perft counter with the given number of worker threads
+     * @param threads Number of worker threads (1 := serial, counting on the calling thread)
+     */
+    public Perft(int threads)
+    {
+        super();
+
+        if (threads < 1)
+            throw new IllegalArgumentException("The thread count must be positive.");
+
+        this.threads = threads;
+        this.executor = threads == 1 ? null : Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "perft-worker");
+
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Counts all action sequences of the given length from the given position. A sequence ends early, if its last
+     * placement wins or draws the game. The given board is not modified.
+     * @param board Game board (unfinished)
+     * @param depth Number of actions (positive)
+     */
+    public void run(GameBoard board, int depth)
+    {
+        run(board, depth, 0);
+    }
+
+    /**
+     * Counts all action sequences of the given length from the given position (see <code>run(GameBoard, int)</code>),
+     * but aborts the run, as soon as the given time budget has been exceeded
+     * @param board Game board (unfinished)
+     * @param depth Number of actions (positive)
+     * @param budget Time budget in milliseconds (0 := unlimited)
+     */
+    public void run(GameBoard board, int depth, long budget)
+    {
+        if (depth < 1)
+            throw new IllegalArgumentException("The depth must be positive.");
+        else if (budget < 0)
+            throw new IllegalArgumentException("The time budget must not be negative.");
+
+        long start = System.nanoTime();
+        Counter total = new Counter(budget == 0 ? 0L : start + Math.min(budget, MAX_BUDGET) * 1000000);
+
+        if (board.isFinished())
+            throw new IllegalArgumentException("The game has already been finished.");
+        else if ((this.executor == null) || (depth <= SPLIT))
+            total.count(new GameBoard(board), depth);
+        else
+        {
+            List<Future<Counter>> futures = new ArrayList<Future<Counter>>();
+
+            split(new GameBoard(board), depth, SPLIT, total, futures);
+
+            for (Future<Counter> future : futures)
+                total.merge(await(future));
+        }
+
+        this.complete = !total.aborted;
+
+        this.sequences = total.sequences;
+        this.wins = total.wins;
+        this.draws = total.draws;
+        this.nodes = total.nodes;
+        this.millis = (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Stops all worker threads (the counter must not be used afterwards)
+     */
+    public void shutdown()
+    {
+        if (this.executor != null)
+            this.executor.shutdownNow();
+    }
+
+    /**
+     * Returns the number of worker threads
+     * @return Thread count
+     */
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    /**
+     * Returns, whether the last run has counted all sequences (false, if it has exceeded its time budget: the counts
+     * are incomplete)
+     * @return Completeness
+     */
+    public boolean isComplete()
+    {
+        return this.complete;
+    }
+
+    /**
+     * Returns the number of action sequences of the last run (including the sequences ending with a win or a draw)
+     * @return Sequence count
+     */
+    public long getSequences()
+    {
+        return this.sequences;
+    }
+
+    /**
+     * Returns the number of sequences of the last run, which end with a win
+     * @return Win count
+     */
+    public long getWins()
+    {
+        return this.wins;
+    }
+
+    /**
+     * Returns the number of sequences of the last run, which end with a draw
+     * @return Draw count
+     */
+    public long getDraws()
+    {
+        return this.draws;
+    }
+
+    /**
+     * Returns the number of positions reached during the last run (every action, which has been made or counted)
+     * @return Node count
+     */
+    public long getNodes()
+    {
+        return this.nodes;
+    }
+
+    /**
+     * Returns the duration of the last run
+     * @return Duration in milliseconds
+     */
+    public long getMillis()
+    {
+        return this.millis;
+    }
+
+    /**
+     * Returns the nodes per second of the last run
+     * @return Nodes per second
+     */
+    public long getNodesPerSecond()
+    {
+        return this.nodes * 1000 / Math.max(this.millis, 1);
+    }
+
+    // walks the first actions on the calling thread and submits the remaining subtrees to the workers
+    private void split(GameBoard board, int depth, int levels, Counter counter, List<Future<Counter>> futures)
+    {
+        if (levels == 0)
+        {
+            final GameBoard copy = new GameBoard(board);
+            final int remaining = depth;
+            final long deadline = counter.deadline;
+
+            futures.add(this.executor.submit(new Callable<Counter>()
+            {
+                @Override
+                public Counter call()
+                {
+                    Counter c = new Counter(deadline);
+
+                    c.count(copy, remaining);
+
+                    return c;
+                }
+            }));
+        }
+        else if (board.getSelected() == null)
+            for (int rest = board.getBagMask(); rest != 0; rest &= rest - 1)
+            {
+                board.selectPiece(Integer.numberOfTrailingZeros(rest));
+                counter.nodes++;
+                split(board, depth - 1, levels - 1, counter, futures);
+                board.unmakeMove();
+            }
+        else
+            for (int c = 0; c < board.getSize() * board.getSize(); c++)
+            {
+                byte res = board.placeSelected(c % board.getSize(), c / board.getSize());
+
+                if (res == 3)
+                    continue;
+
+                counter.nodes++;
+
+                if (!counter.ended(res))
+                    split(board, depth - 1, levels - 1, counter, futures);
+
+                board.unmakeMove();
+            }
+    }
+
+    // waits for the given worker result
+    private static Counter await(Future<Counter> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(ex);
+        }
+        catch (ExecutionException ex)
+        {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    // the counts of a (sub)tree
+    private static final class Counter
+    {
+        private static final int CHECK = 0x10000; // the number of nodes between two checks of the deadline
+        private final long deadline; // System.nanoTime() value (0 := unlimited)
+        private long sequences;
+        private long wins;
+        private long draws;
+        private long nodes;
+        private long checked = -CHECK; // node count of the last check (the first call checks immediately)
+        private boolean aborted;
+
+
+        // creates a new counter, which aborts at the given deadline
+        Counter(long deadline)
+        {
+            this.deadline = deadline;
+        }
+
+        // counts all sequences of the given length from the given unfinished position
+        void count(GameBoard board, int depth)
+        {
+            if ((this.deadline != 0L) && (this.nodes - this.checked >= CHECK))
+            {
+                this.checked = this.nodes;
+                this.aborted |= System.nanoTime() - this.deadline > 0;
+            }
+
+            if (this.aborted)
+                return;
+            else if (board.getSelected() == null)
+            {
+                int bag = board.getBagMask();
+
+                if (depth == 1) // the selections are leaves, so they are only counted
+                {
+                    this.nodes += Integer.bitCount(bag);
+                    this.sequences += Integer.bitCount(bag);
+
+                    return;
+                }
+
+                for (int rest = bag; (rest != 0) && !this.aborted; rest &= rest - 1)
+                {
+                    board.selectPiece(Integer.numberOfTrailingZeros(rest));
+                    this.nodes++;
+                    count(board, depth - 1);
+                    board.unmakeMove();
+                }
+            }
+            else
+                for (int c = 0; (c < board.getSize() * board.getSize()) && !this.aborted; c++)
+                {
+                    byte res = board.placeSelected(c % board.getSize(), c / board.getSize());
+
+                    if (res == 3) // the cell is occupied
+                        continue;
+
+                    this.nodes++;
+
+                    if (!ended(res))
+                        if (depth == 1)
+                            this.sequences++;
+                        else
+                            count(board, depth - 1);
+
+                    board.unmakeMove();
+                }
+        }
+
+        // counts the sequence, if the given placement result ends the game
+        boolean ended(byte res)
+        {
+            if ((res != 4) && (res != 5))
+                return false;
+            else if (res == 4)
+                this.wins++;
+            else
+                this.draws++;
+
+            this.sequences++;
+
+            return true;
+        }
+
+        // adds the counts of the given subtree
+        void merge(Counter other)
+        {
+            this.sequences += other.sequences;
+            this.wins += other.wins;
+            this.draws += other.draws;
+            this.nodes += other.nodes;
+            this.aborted |= other.aborted;
+        }
+    }
+}
@@ -5,7 +5,9 @@
 package edu.kit.informatik;
 
 /**
- * Represents a game piece/token
+ * Represents a game piece/token.<br/>
+ * Pieces are immutable: The 16 existing pieces are shared constants, which are obtained via <code>Piece.of</code>.
+ * Whether a piece has been used, is stored on the game board.
  * @author Unknown6656
  * @version 1
  */
@@ -18,37 +20,44 @@ public class Piece
      *                  ||||
      * BYTE VALUE: 0000.XXXX
      */
-    private byte val;
-    private boolean used;
+    private static final Piece[] PIECES = new Piece[0x10];
+    private final byte val;
     
     
+    static
+    {
+        for (byte i = 0x00; i <= 0x0f; i++)
+            PIECES[i] = new Piece(i);
+    }
+    
     /**
      * Creates a new game piece using the given properties
      * @param val Game piece properties
      */
-    public Piece(byte val)
+    private Piece(byte val)
     {
         super();
         
-        this.val = (byte) (val & 0x0f);
+        this.val = val;
     }
     
     /**
-     * Returns the underlying byte value, which represents the piece's properties
-     * @return Byte value
+     * Returns the shared game piece with the given properties
+     * @param val Game piece properties (only the lower 4 bits are used)
+     * @return Game piece
      */
-    public byte value()
+    public static Piece of(int val)
     {
-        return this.val;
+        return PIECES[val & 0x0f];
     }
-
+    
     /**
-     * Sets the underlying byte value, which represents the piece's properties, to the given value
-     * @param val New byte value
+     * Returns the underlying byte value, which represents the piece's properties
+     * @return Byte value
      */
-    public void value(byte val)
+    public byte value()
     {
-        this.val = (byte) (val & 0x0f);
+        return this.val;
     }
 
     /**
@@ -86,24 +95,4 @@ public class Piece
     {
         return (this.val & 0x01) != 0x00; 
     }
-
-    
-    /**
-     * Returns, whether the Piece has been used or not
-     * @return Used
-     */
-    public boolean isUsed()
-    {
-        return used;
-    }
-
-    
-    /**
-     * Sets, whether the Piece has been used or not
-     * @param used New used value
-     */
-    public void setUsed(boolean used)
-    {
-        this.used = used;
-    }
 }
@@ -0,0 +1,874 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * A single game of the final task 02, which executes the text commands on its own game board and writes the
+ * responses to its own output.<br/>
+ * The search engines used by the commands `solve`, `hint` and `mcts` belong to the executing thread (the console's
+ * main thread or a worker of the <code>GameServer</code>), so that searches never wait for each other, the command
+ * `perft` uses its own counter per call. Thread counts are limited to the number of available processors, the
+ * searches of `solve`, `hint`, `mcts` and `perft` to their time budget.
+ * @author Unknown6656
+ * @version 1
+ */
+public class Session
+{
+    private static final ThreadLocal<Solver> SOLVER = new ThreadLocal<Solver>();
+    private static final ThreadLocal<ParallelSolver> PARALLEL_SOLVER = new ThreadLocal<ParallelSolver>();
+    // owns a separate transposition table, as its scores are not exact
+    private static final ThreadLocal<Solver> HINT_SOLVER = new ThreadLocal<Solver>();
+    private static final ThreadLocal<MonteCarlo> MONTE_CARLO = new ThreadLocal<MonteCarlo>();
+    private static volatile Tablebase tablebase; // passed to the engines before every search
+    private static final long NO_NUMBER = Long.MIN_VALUE;
+    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors(); // per search command
+    private static final long DEFAULT_BUDGET = 30000; // default time budget of `solve` and `perft` in milliseconds
+    // a snapshot name must neither contain a path separator nor start with a dot (which excludes `.` and `..`)
+    private static final String SNAPSHOT_NAME = "[A-Za-z0-9_\\-][A-Za-z0-9_.\\-]*";
+    private final GameBoard game;
+    private final Output output;
+    private final StringBuilder reply = new StringBuilder();
+    private GameRecordWriter recorder;
+    private Path snapshots; // directory of the snapshots of `save` and `load` (null := the commands are disabled)
+    private CommandStats stats; // null := the instrumentation is turned off
+
+
+    /**
+     * Creates a new session on a 6x6 game board
+     * @param torus Indicates, whether the game board is a torus
+     * @param output Receives all responses of the session
+     */
+    public Session(boolean torus, Output output)
+    {
+        super();
+
+        this.game = new GameBoard(6, torus);
+        this.game.setPlayer((byte) 1);
+        this.output = output;
+    }
+
+    /**
+     * Sets the endgame tablebase used by the commands `solve` and `hint` of all sessions
+     * @param tb Tablebase or null
+     */
+    public static void setTablebase(Tablebase tb)
+    {
+        tablebase = tb;
+    }
+
+    /**
+     * Sets the game archive, to which every finished game and the unfinished game at the session's end are appended
+     * (except for games restored by `load`)
+     * @param recorder Game archive writer or null
+     */
+    public void setRecorder(GameRecordWriter recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the directory, in which the commands `save` and `load` store their snapshots. The commands only accept
+     * plain file names, which are resolved against this directory.
+     * @param directory Snapshot directory or null, if the commands are disabled
+     */
+    public void setSnapshotDirectory(Path directory)
+    {
+        this.snapshots = directory;
+    }
+
+    /**
+     * Returns the session's game board
+     * @return Game board
+     */
+    public GameBoard getBoard()
+    {
+        return this.game;
+    }
+
+    /**
+     * Executes the given command line, which is encoded in the given byte array.<br/>
+     * Well-formed commands, which succeed, are executed without allocating strings. All other lines are decoded and
+     * passed to <code>execute(String)</code>, so that the responses are always identical.
+     * @param line Byte array containing the command line
+     * @param start Start index of the command line (inclusive)
+     * @param end End index of the command line (exclusive)
+     * @param charset Charset of the command line
+     * @return False, if the session has been terminated (`exit` or `quit`), otherwise true
+     */
+    public boolean execute(byte[] line, int start, int end, Charset charset)
+    {
+        int from = start;
+        int to = end;
+
+        while ((from < to) && ((line[from] & 0xff) <= ' '))
+            from++;
+
+        while ((to > from) && ((line[to - 1] & 0xff) <= ' '))
+            to--;
+
+        int space = from;
+
+        while ((space < to) && (line[space] != ' '))
+            space++;
+
+        int args = space;
+
+        while ((args < to) && ((line[args] & 0xff) <= ' '))
+            args++;
+
+        long time = this.stats == null ? 0L : System.nanoTime();
+
+        if (matches(line, from, space, "quit") || matches(line, from, space, "exit"))
+            return terminate();
+        else if (!executeFast(line, from, space, args, to))
+            return execute(new String(line, start, end - start, charset));
+        else if (this.stats != null)
+            for (int i = 0; i < CommandStats.WIN_CHECK; i++)
+                if (matches(line, from, space, CommandStats.name(i)))
+                    this.stats.record(i, time);
+
+        return true;
+    }
+
+    /**
+     * Executes the given command line
+     * @param line Command line
+     * @return False, if the session has been terminated (`exit` or `quit`), otherwise true
+     */
+    public boolean execute(String line)
+    {
+        long time = this.stats == null ? 0L : System.nanoTime();
+        String command = line.trim();
+        String arguments = command.contains(" ") ? command.substring(command.indexOf(' ')).trim() : "";
+
+        if (command.contains(" "))
+            command = command.substring(0, command.indexOf(' ') + 1).trim();
+
+        try
+        {
+            switch (command.toLowerCase())
+            {
+                case "select":
+                    internalSELECTCommand(arguments);
+
+                    break;
+                case "place":
+                    internalPLACECommand(arguments);
+
+                    break;
+                case "bag":
+                    printBag();
+
+                    break;
+                case "threats":
+                case "safe":
+                    printThreats(command.equalsIgnoreCase("safe"));
+
+                    break;
+                case "rowprint":
+                    if (checkArgumentsCount(arguments, 1))
+                        printRow(Integer.parseInt(arguments));
+
+                    break;
+                case "colprint":
+                    if (checkArgumentsCount(arguments, 1))
+                        printColumn(Integer.parseInt(arguments));
+
+                    break;
+                case "solve":
+                    internalSOLVECommand(arguments);
+
+                    break;
+                case "hint":
+                    internalHINTCommand(arguments);
+
+                    break;
+                case "mcts":
+                    internalMCTSCommand(arguments);
+
+                    break;
+                case "perft":
+                    internalPERFTCommand(arguments);
+
+                    break;
+                case "undo":
+                    if (this.game.unmakeMove())
+                        out("OK");
+                    else
+                        out("Error, There is no move, which could be undone.");
+
+                    break;
+                case "redo":
+                    if (this.game.redoMove())
+                        out("OK");
+                    else
+                        out("Error, There is no undone move, which could be redone.");
+
+                    break;
+                case "print": // only for debugging
+                    out(this.game.print());
+
+                    break;
+                case "stats":
+                    internalSTATSCommand(arguments);
+
+                    break;
+                case "save":
+                case "load":
+                    internalSNAPSHOTCommand(command.toLowerCase(), arguments);
+
+                    break;
+                case "exit":
+                case "quit":
+                    return terminate();
+                default:
+                    out("Error, The command '%s' is unknown or not registered.", command);
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+            out("Error, At least one argument/command could not be parsed as an integer value.");
+        }
+        catch (NullPointerException ex)
+        {
+            out("Error, Some internal error occured. Pray to god/jesus or retry the operation an other time.");
+        }
+        catch (StackOverflowError ex)
+        {
+            out("Error, Some internal error occured. Pray to god/jesus or retry the operation an other time.");
+        }
+
+        if (this.stats != null)
+            this.stats.record(CommandStats.indexOf(command.toLowerCase()), time);
+
+        return true;
+    }
+
+    // Fired, when the command `SELECT` is used
+    private void internalSELECTCommand(String arguments)
+    {
+        if (this.game.isFinished())
+            out("Error, Invalid operation `select`: The game has already been finished.");
+        else if (checkArgumentsCount(arguments, 1))
+            if (this.game.getSelected() == null)
+            {
+                byte num = Byte.parseByte(arguments);
+
+                if ((num < 0x00) || (num > 0x0f))
+                    out("Error, The game piece number must be a positive integer value between "
+                      + "0 and 15 [incl.]");
+                else if (this.game.isInBag(num))
+                {
+                    this.game.selectPiece(num);
+
+                    out("OK");
+                }
+                else
+                    out("Error, The game piece number %d has already been used.", num);
+            }
+            else
+                out("Error, The `select`-command is invalid, as the selection is currently locked.");
+    }
+
+    // Fired, when the command `PLACE` is used
+    private void internalPLACECommand(String arguments)
+    {
+        if (this.game.isFinished())
+            out("Error, Invalid operation `place`: The game has already been finished.");
+        else if (checkArgumentsCount(arguments, 2))
+            if (this.game.getSelected() != null)
+            {
+                String[] coord = arguments.split("\\;");
+                int x = Integer.parseInt(coord[1]);
+                int y = Integer.parseInt(coord[0]);
+
+                place(x, y);
+            }
+            else
+                out("Error, The `place`-command is invalid, as no piece is currently selected.");
+    }
+
+    // Fired, when the command `SOLVE` is used (arguments: optional thread count (0 := sequential, the default) and
+    // optional time budget in milliseconds)
+    private void internalSOLVECommand(String arguments)
+    {
+        String[] args = arguments.split("\\;");
+        int threads = arguments.length() > 0 ? Integer.parseInt(args[0]) : 0;
+        long budget = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_BUDGET;
+
+        if (this.game.isFinished())
+            out("Error, Invalid operation `solve`: The game has already been finished.");
+        else if ((threads < 0) || (budget < 1))
+            out("Error, The number of threads must not be negative and the time budget must be positive.");
+        else if (threads > MAX_THREADS)
+            out("Error, The number of threads must not exceed %d.", MAX_THREADS);
+        else if (threads == 0)
+        {
+            Solver engine = solver();
+            int res = engine.solve(this.game, budget);
+
+            if (!engine.isSolved())
+                out("Error, The time budget of %d ms has been exceeded after %d nodes.", budget, engine.getNodes());
+            else
+            {
+                printSolution(res, engine.getBestCell(), engine.getBestPiece());
+                out("%d nodes, %d ms, %d nodes/s, %d%% table hits", engine.getNodes(), engine.getMillis(),
+                    engine.getNodesPerSecond(), Math.round(engine.getHitRate() * 100));
+            }
+        }
+        else
+        {
+            ParallelSolver engine = parallelSolver(threads);
+            int res = engine.solve(this.game, budget);
+
+            if (!engine.isSolved())
+                out("Error, The time budget of %d ms has been exceeded after %d nodes.", budget, engine.getNodes());
+            else
+            {
+                printSolution(res, engine.getBestCell(), engine.getBestPiece());
+                out("%d nodes, %d ms, %d nodes/s, %d%% table hits, %d threads", engine.getNodes(),
+                    engine.getMillis(), engine.getNodesPerSecond(), Math.round(engine.getHitRate() * 100),
+                    threads);
+            }
+        }
+    }
+
+    // Fired, when the command `HINT` is used (argument: time budget in milliseconds)
+    private void internalHINTCommand(String arguments)
+    {
+        if (this.game.isFinished())
+            out("Error, Invalid operation `hint`: The game has already been finished.");
+        else if (checkArgumentsCount(arguments, 1))
+        {
+            long budget = Long.parseLong(arguments);
+
+            if (budget < 1)
+                out("Error, The time budget must be a positive integer value.");
+            else
+            {
+                Solver engine = hintSolver();
+                int res = engine.think(this.game, budget);
+
+                if (engine.isSolved())
+                    printSolution(res, engine.getBestCell(), engine.getBestPiece());
+                else
+                    out(appendMove(new StringBuilder("unknown"), engine.getBestCell(), engine.getBestPiece())
+                        .toString());
+
+                out("depth %d, %d nodes, %d ms, %d nodes/s, %d%% table hits", engine.getDepth(),
+                    engine.getNodes(), engine.getMillis(), engine.getNodesPerSecond(),
+                    Math.round(engine.getHitRate() * 100));
+            }
+        }
+    }
+
+    // Fired, when the command `PERFT` is used (arguments: depth, optional thread count (serial by default) and optional
+    // time budget in milliseconds)
+    private void internalPERFTCommand(String arguments)
+    {
+        if (this.game.isFinished())
+            out("Error, Invalid operation `perft`: The game has already been finished.");
+        else if (checkArgumentsCount(arguments, 1))
+        {
+            String[] args = arguments.split("\\;");
+            int depth = Integer.parseInt(args[0]);
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+            long budget = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_BUDGET;
+
+            if ((depth < 1) || (threads < 1) || (budget < 1))
+                out("Error, The depth, the number of threads and the time budget must be positive integer values.");
+            else if (threads > MAX_THREADS)
+                out("Error, The number of threads must not exceed %d.", MAX_THREADS);
+            else
+            {
+                Perft counter = new Perft(threads);
+
+                try
+                {
+                    counter.run(this.game, depth, budget);
+                }
+                finally
+                {
+                    counter.shutdown();
+                }
+
+                if (!counter.isComplete())
+                    out("Error, The time budget of %d ms has been exceeded after %d nodes.", budget,
+                        counter.getNodes());
+                else
+                {
+                    out("%d sequences, %d wins, %d draws", counter.getSequences(), counter.getWins(),
+                        counter.getDraws());
+                    out("%d nodes, %d ms, %d nodes/s, %d threads", counter.getNodes(), counter.getMillis(),
+                        counter.getNodesPerSecond(), threads);
+                }
+            }
+        }
+    }
+
+    // Fired, when the command `MCTS` is used (arguments: time budget in milliseconds and optional thread count)
+    private void internalMCTSCommand(String arguments)
+    {
+        if (this.game.isFinished())
+            out("Error, Invalid operation `mcts`: The game has already been finished.");
+        else if (checkArgumentsCount(arguments, 1))
+        {
+            String[] args = arguments.split("\\;");
+            long budget = Long.parseLong(args[0]);
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+            if ((budget < 1) || (threads < 1))
+                out("Error, The time budget and the number of threads must be positive integer values.");
+            else if (threads > MAX_THREADS)
+                out("Error, The number of threads must not exceed %d.", MAX_THREADS);
+            else
+            {
+                MonteCarlo engine = monteCarlo(threads);
+
+                engine.search(this.game, budget);
+
+                out(appendMove(new StringBuilder(), engine.getBestCell(), engine.getBestPiece()).toString().trim());
+                out("%d playouts, %d ms, %d playouts/s, %d%% expected score, %d threads", engine.getPlayouts(),
+                    engine.getMillis(), engine.getPlayoutsPerSecond(), Math.round(engine.getScore() * 100),
+                    threads);
+            }
+        }
+    }
+
+    // Fired, when the command `STATS` is used (`on`, `off` and `reset` control the instrumentation)
+    private void internalSTATSCommand(String arguments)
+    {
+        switch (arguments.toLowerCase())
+        {
+            case "on":
+                if (this.stats == null)
+                    this.stats = new CommandStats();
+
+                this.game.setWinTimer(this.stats.get(CommandStats.WIN_CHECK));
+                out("OK");
+
+                break;
+            case "off":
+                this.stats = null;
+                this.game.setWinTimer(null);
+                out("OK");
+
+                break;
+            case "reset":
+                if (this.stats != null)
+                    this.stats.reset();
+
+                out("OK");
+
+                break;
+            case "":
+                if (this.stats == null)
+                    out("Error, The instrumentation is turned off (use `stats on`).");
+                else
+                {
+                    this.reply.setLength(0);
+
+                    out(this.stats.appendTo(this.reply));
+                }
+
+                break;
+            default:
+                out("Error, Expected `on`, `off`, `reset` or no argument.");
+        }
+    }
+
+    // Fired, when the command `SAVE` or `LOAD` is used (the argument is the snapshot's name within the snapshot
+    // directory)
+    private void internalSNAPSHOTCommand(String command, String arguments)
+    {
+        if (this.snapshots == null)
+            out("Error, The command `%s` has been disabled.", command);
+        else if (arguments.isEmpty())
+            out("Error, Expected the snapshot's name as argument.");
+        else if (!arguments.matches(SNAPSHOT_NAME))
+            out("Error, The snapshot's name must only consist of letters, digits, `_`, `-` and `.` and must not start "
+                + "with `.`.");
+        else
+            try
+            {
+                if (command.equals("save"))
+                    Snapshot.save(this.game, this.snapshots.resolve(arguments));
+                else
+                    Snapshot.load(this.game, this.snapshots.resolve(arguments));
+
+                out("OK");
+            }
+            catch (IOException ex)
+            {
+                out("Error, The snapshot could not be %s: %s", command.equals("save") ? "saved" : "loaded",
+                    ex.getMessage());
+            }
+    }
+
+    /**
+     * Indicates, whether the given command line starts a search (`solve`, `hint`, `mcts` or `perft`), whose duration
+     * is not bounded by the game board's size
+     * @param line Byte array containing the command line
+     * @param start Start index of the command line (inclusive)
+     * @param end End index of the command line (exclusive)
+     * @return True, if the command is a search
+     */
+    public static boolean isSearch(byte[] line, int start, int end)
+    {
+        int from = start;
+
+        while ((from < end) && ((line[from] & 0xff) <= ' '))
+            from++;
+
+        int space = from;
+
+        while ((space < end) && (line[space] != ' '))
+            space++;
+
+        // the commands are case-insensitive (see execute(String))
+        String command = new String(line, from, Math.min(space - from, 5), GameServer.CHARSET).toLowerCase();
+
+        return (space - from <= 5) && (command.equals("solve") || command.equals("hint") || command.equals("mcts")
+                                    || command.equals("perft"));
+    }
+
+    // executes the given command, if it is well-formed and succeeds, and returns false otherwise
+    private boolean executeFast(byte[] line, int command, int space, int from, int to)
+    {
+        if (matches(line, command, space, "select"))
+        {
+            long num = parse(line, from, to);
+
+            if (this.game.isFinished() || (this.game.getSelected() != null) || (num < 0x00) || (num > 0x0f)
+             || !this.game.isInBag((int) num))
+                return false;
+
+            this.game.selectPiece((int) num);
+
+            out("OK");
+        }
+        else if (matches(line, command, space, "place"))
+        {
+            int semicolon = from;
+
+            while ((semicolon < to) && (line[semicolon] != ';'))
+                semicolon++;
+
+            long y = parse(line, from, semicolon);
+            long x = parse(line, semicolon + 1, to);
+
+            if (this.game.isFinished() || (this.game.getSelected() == null) || (x == NO_NUMBER) || (y == NO_NUMBER))
+                return false;
+
+            place((int) x, (int) y);
+        }
+        else if (matches(line, command, space, "bag"))
+            printBag();
+        else if (matches(line, command, space, "threats") || matches(line, command, space, "safe"))
+            printThreats(line[command] == 's');
+        else if (matches(line, command, space, "rowprint") || matches(line, command, space, "colprint"))
+        {
+            long num = parse(line, from, to);
+
+            if (num == NO_NUMBER)
+                return false;
+            else if (line[command] == 'r')
+                printRow((int) num);
+            else
+                printColumn((int) num);
+        }
+        else
+            return false;
+
+        return true;
+    }
+
+    // places the selected piece on the given position
+    private void place(int x, int y)
+    {
+        switch (this.game.placeSelected(x, y))
+        {
+            case 1: out("Error, Invalid coordinates (%d|%d): The field might is outside "
+                      + "the game board dimensions.", x, y);
+                break;
+            case 2: out("Error, The piece in question is invalid.");
+                break;
+            case 3: out("Error, Invalid coordinates (%d|%d): The field is already in use.", x, y);
+                break;
+            case 4:
+                this.reply.setLength(0);
+                this.reply.append('P')
+                          .append(this.game.getPlayer() + 1)
+                          .append(" wins\n")
+                          .append(this.game.getRound());
+
+                out(this.reply);
+                record();
+
+                break;
+            case 5: out("draw");
+                record();
+                break;
+            default:
+                out("OK");
+        }
+    }
+
+    /**
+     * Ends the session (at `quit`, `exit` or the end of the input): An unfinished game is appended to the game
+     * archive
+     */
+    public void end()
+    {
+        if (!this.game.isFinished() && (this.game.getBagMask() != 0) && (this.game.getRound() > 0))
+            record();
+    }
+
+    // ends the session and returns false
+    private boolean terminate()
+    {
+        end();
+
+        return false;
+    }
+
+    // appends the current game to the game archive (the archive is not used any further, if it fails): Restored games
+    // are skipped, as their move history is incomplete and cannot be replayed
+    private void record()
+    {
+        if ((this.recorder != null) && !this.game.isRestored())
+            try
+            {
+                this.recorder.write(this.game);
+            }
+            catch (IOException ex)
+            {
+                this.recorder = null;
+
+                out("Error, The game could not be archived, the recording has been stopped: %s", ex.getMessage());
+            }
+    }
+
+    // prints the pieces inside the bag
+    private void printBag()
+    {
+        printPieces(this.game.getBagMask());
+    }
+
+    // prints the pieces inside the bag, which would (not) let the opponent win immediately on the current board (the
+    // answer is only valid before a piece is selected, as the placement of the selected piece changes the board)
+    private void printThreats(boolean safe)
+    {
+        if (this.game.isFinished())
+            out("Error, Invalid operation `%s`: The game has already been finished.", safe ? "safe" : "threats");
+        else if (this.game.getSelected() != null)
+            out("Error, The `%s`-command is invalid, as the selected piece has to be placed first.",
+                safe ? "safe" : "threats");
+        else
+        {
+            int threats = this.game.getTracker().threats();
+
+            printPieces(this.game.getBagMask() & (safe ? ~threats : threats));
+        }
+    }
+
+    // prints the given pieces in ascending order
+    private void printPieces(int pieces)
+    {
+        this.reply.setLength(0);
+
+        for (int rest = pieces; rest != 0; rest &= rest - 1)
+            (this.reply.length() == 0 ? this.reply : this.reply.append(' '))
+                .append(Integer.numberOfTrailingZeros(rest));
+
+        out(this.reply);
+    }
+
+    // prints the given row or an error message, if it does not exist
+    private void printRow(int row)
+    {
+        this.reply.setLength(0);
+
+        if (this.game.appendRow(this.reply, row))
+            out(this.reply);
+        else
+        {
+            out("Error, the row number must be a valid integer number between 0 and %d.", this.game.getSize() - 1);
+            out("");
+        }
+    }
+
+    // prints the given column or an error message, if it does not exist
+    private void printColumn(int col)
+    {
+        this.reply.setLength(0);
+
+        if (this.game.appendColumn(this.reply, col))
+            out(this.reply);
+        else
+        {
+            out("Error, the column number must be a valid integer number between 0 and %d.",
+                this.game.getSize() - 1);
+            out("");
+        }
+    }
+
+    // prints the value and the best move of a solved position
+    private void printSolution(int value, int cell, int piece)
+    {
+        out(appendMove(new StringBuilder(value > 0 ? "win" : value < 0 ? "loss" : "draw"), cell, piece).toString());
+    }
+
+    // appends the given move as `place`- and `select`-command
+    private StringBuilder appendMove(StringBuilder sb, int cell, int piece)
+    {
+        if (cell >= 0)
+            sb.append(" place ")
+              .append(cell / this.game.getSize())
+              .append(';')
+              .append(cell % this.game.getSize());
+
+        if (piece >= 0)
+            sb.append(" select ")
+              .append(piece);
+
+        return sb;
+    }
+
+    // checks, whether the given argument string contains enough arguments
+    private boolean checkArgumentsCount(String arg, int count)
+    {
+        if ((count == 1) && (arg.length() > 0))
+            return true;
+        else if (arg.split("\\;").length < count)
+        {
+            out("Error, Not enough arguments: At least %d arguments separated by a semicolon are required.", count);
+            return false;
+        }
+
+        return true;
+    }
+
+    // returns the sequential solver of the current thread
+    private static Solver solver()
+    {
+        Solver engine = SOLVER.get();
+
+        if (engine == null)
+        {
+            engine = new Solver();
+            SOLVER.set(engine);
+        }
+
+        engine.setTablebase(tablebase);
+
+        return engine;
+    }
+
+    // returns the solver of the command `hint` of the current thread
+    private static Solver hintSolver()
+    {
+        Solver engine = HINT_SOLVER.get();
+
+        if (engine == null)
+        {
+            engine = new Solver();
+            HINT_SOLVER.set(engine);
+        }
+
+        engine.setTablebase(tablebase);
+
+        return engine;
+    }
+
+    // returns the parallel solver of the current thread with the given number of threads (the old one is only shut
+    // down, after its replacement has been created)
+    private static ParallelSolver parallelSolver(int threads)
+    {
+        ParallelSolver engine = PARALLEL_SOLVER.get();
+
+        if ((engine == null) || (engine.getThreads() != threads))
+        {
+            ParallelSolver old = engine;
+
+            engine = new ParallelSolver(threads);
+            PARALLEL_SOLVER.set(engine);
+
+            if (old != null)
+                old.shutdown();
+        }
+
+        engine.setTablebase(tablebase);
+
+        return engine;
+    }
+
+    // returns the Monte Carlo engine of the current thread with the given number of threads (the old one is only shut
+    // down, after its replacement has been created)
+    private static MonteCarlo monteCarlo(int threads)
+    {
+        MonteCarlo engine = MONTE_CARLO.get();
+
+        if ((engine == null) || (engine.getThreads() != threads))
+        {
+            MonteCarlo old = engine;
+
+            engine = new MonteCarlo(threads);
+            MONTE_CARLO.set(engine);
+
+            if (old != null)
+                old.shutdown();
+        }
+
+        return engine;
+    }
+
+    // checks, whether the given range of the byte array equals the given (lower case) command name
+    private static boolean matches(byte[] line, int from, int to, String name)
+    {
+        if (to - from != name.length())
+            return false;
+
+        for (int i = 0; i < name.length(); i++)
+            if (line[from + i] != name.charAt(i))
+                return false;
+
+        return true;
+    }
+
+    // parses a decimal integer of the form `[+-]d{1,9}` from the given range or returns NO_NUMBER
+    private static long parse(byte[] line, int from, int to)
+    {
+        int i = (from < to) && ((line[from] == '-') || (line[from] == '+')) ? from + 1 : from;
+        long res = 0;
+
+        if ((i >= to) || (to - i > 9))
+            return NO_NUMBER;
+
+        for (; i < to; i++)
+            if ((line[i] < '0') || (line[i] > '9'))
+                return NO_NUMBER;
+            else
+                res = res * 10 + (line[i] - '0');
+
+        return line[from] == '-' ? -res : res;
+    }
+
+    // writes the given response
+    private void out(CharSequence msg)
+    {
+        this.output.printLine(msg);
+    }
+
+    // writes the given formatted response
+    private void out(String msg, Object... args)
+    {
+        this.output.printLine(String.format(msg, args));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Saves and restores the complete state of a <code>GameBoard</code> (without its move history) as a small binary
+ * snapshot with a fixed layout, whose length only depends on the board size (46 bytes for a 6x6 board). Restoring a
+ * snapshot reuses the given board and takes a constant time per board size.<br/>
+ * <br/>
+ * Layout (big endian):
+ * <pre>
+ * 0x00  int    magic "QSN1"
+ * 0x04  byte   board size
+ * 0x05  byte   flags (bit 0 := torus, bit 1 := finished)
+ * 0x06  byte   player to move
+ * 0x07  byte   selected piece (0xff := none)
+ * 0x08  short  bag bit mask
+ * 0x0a  short  reserved
+ * 0x0c  int    round counter
+ * 0x10  long   occupancy bit mask, (size * size + 63) / 64 words (bit i of word w := cell w * 64 + i)
+ *       byte   piece values, (size * size + 1) / 2 bytes (two cells per byte, the even cell in the high nibble)
+ *       int    CRC-32 of all preceding bytes
+ * </pre>
+ * @author Unknown6656
+ * @version 1
+ */
+public final class Snapshot
+{
+    /**
+     * The snapshot's magic number ("QSN1")
+     */
+    public static final int MAGIC = 0x51534e31;
+    private static final int HEADER = 0x10;
+    private static final int NONE = 0xff;
+
+
+    /**
+     * private default constructor
+     */
+    private Snapshot()
+    {
+    }
+
+    /**
+     * Returns the length of a snapshot of a board with the given size
+     * @param size Game board size
+     * @return Length in bytes
+     */
+    public static int length(int size)
+    {
+        int cells = size * size;
+
+        return HEADER + ((cells + 0x3f) >>> 6) * 8 + (cells + 1) / 2 + 4;
+    }
+
+    /**
+     * Writes the snapshot of the given board at the buffer's position
+     * @param board Game board (at most 255x255 cells)
+     * @param out Output buffer with at least <code>length(board.getSize())</code> remaining bytes
+     */
+    public static void write(GameBoard board, ByteBuffer out)
+    {
+        int start = out.position();
+        int cells = board.getSize() * board.getSize();
+
+        out.putInt(MAGIC)
+           .put((byte) board.getSize())
+           .put((byte) ((board.isTorus() ? 0x01 : 0x00) | (board.isFinished() ? 0x02 : 0x00)))
+           .put(board.getPlayer())
+           .put((byte) (board.getSelected() == null ? NONE : board.getSelected().value()))
+           .putShort((short) board.getBagMask())
+           .putShort((short) 0)
+           .putInt(board.getRound());
+
+        for (int w = 0; w < (cells + 0x3f) >>> 6; w++)
+            out.putLong(board.occupiedWord(w));
+
+        for (int c = 0; c < cells; c += 2)
+            out.put((byte) ((value(board, c) << 4) | (c + 1 < cells ? value(board, c + 1) : 0)));
+
+        out.putInt(checksum(out, start, out.position()));
+    }
+
+    /**
+     * Restores the snapshot at the buffer's position into the given board, which has to have the snapshot's size
+     * @param board Game board
+     * @param in Input buffer
+     * @throws IOException Thrown, if the snapshot is truncated, corrupt or has been taken from a board with another
+     * size
+     */
+    public static void read(GameBoard board, ByteBuffer in) throws IOException
+    {
+        int start = in.position();
+        int size = board.getSize();
+        int cells = size * size;
+
+        if ((in.remaining() < length(size)) || (in.getInt(start) != MAGIC))
+            throw new IOException("The data is not a snapshot.");
+        else if ((in.get(start + 4) & 0xff) != size)
+            throw new IOException("The snapshot has been taken from a game board with another size.");
+        else if (in.getInt(start + length(size) - 4) != checksum(in, start, start + length(size) - 4))
+            throw new IOException("The snapshot is corrupt (checksum mismatch).");
+
+        int flags = in.get(start + 5);
+        byte player = in.get(start + 6);
+        int selected = in.get(start + 7) & 0xff;
+        int bag = in.getShort(start + 8) & 0xffff;
+        int round = in.getInt(start + 0x0c);
+        int[] values = new int[cells];
+        int used = bag; // a piece is either inside the bag or placed (the last placed piece stays selected)
+
+        for (int c = 0; c < cells; c++)
+        {
+            boolean occupied = (in.getLong(start + HEADER + (c >>> 6) * 8) & (1L << c)) != 0L;
+            int value = (in.get(start + HEADER + ((cells + 0x3f) >>> 6) * 8 + c / 2) >>> ((c & 1) == 0 ? 4 : 0)) & 0x0f;
+
+            if (occupied && ((used & (1 << value)) != 0))
+                throw new IOException("The snapshot is corrupt (a piece is used more than once).");
+
+            values[c] = occupied ? value : -1;
+            used |= occupied ? 1 << value : 0;
+        }
+
+        if (((selected != NONE) && ((selected > 0x0f) || ((bag & (1 << selected)) != 0))) || (round < 0))
+            throw new IOException("The snapshot is corrupt (invalid selection or round).");
+
+        board.restore((flags & 0x01) != 0, values, bag, selected == NONE ? -1 : selected, player, round,
+                      (flags & 0x02) != 0);
+        in.position(start + length(size));
+    }
+
+    /**
+     * Saves the snapshot of the given board to the given file. The file is replaced atomically, so a crash never
+     * leaves a partially written snapshot behind.
+     * @param board Game board
+     * @param path File path
+     * @throws IOException Thrown, if the file could not be written
+     */
+    public static void save(GameBoard board, Path path) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length(board.getSize()));
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        write(board, buffer);
+        Files.write(temp, buffer.array());
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores the snapshot of the given file into the given board
+     * @param board Game board
+     * @param path File path
+     * @throws IOException Thrown, if the file could not be read or does not contain a valid snapshot
+     */
+    public static void load(GameBoard board, Path path) throws IOException
+    {
+        read(board, ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    // returns the piece value of the given cell or 0, if it is empty
+    private static int value(GameBoard board, int cell)
+    {
+        Piece piece = board.getPiece(cell % board.getSize(), cell / board.getSize());
+
+        return piece == null ? 0 : piece.value();
+    }
+
+    // returns the CRC-32 of the given buffer range
+    private static int checksum(ByteBuffer buffer, int from, int to)
+    {
+        CRC32 crc = new CRC32();
+
+        for (int i = from; i < to; i++)
+            crc.update(buffer.get(i));
+
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,598 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+/**
+ * Computes the game-theoretic value of a game board position using a negamax search with alpha-beta pruning and a
+ * fixed-size transposition table.<br/>
+ * A search node is the player who has to place the currently selected piece. Its moves are the pairs of an empty
+ * cell and the piece, which it selects afterwards for the opponent - exactly the `place`-`select`-sequence of
+ * <code>Final02</code>.<br/>
+ * Besides the complete solution, the solver can search iteratively deepened with a hard time budget (see
+ * <code>think</code>). Such a search must use its own transposition table, as its scores beyond the search horizon
+ * are not exact.
+ * @author Unknown6656
+ * @version 1
+ */
+public class Solver
+{
+    /**
+     * The score of an immediate win (a win in <code>n</code> plies is scored with <code>WIN - n</code>)
+     */
+    public static final int WIN = 100;
+    /**
+     * The default number of transposition table entries as power of two
+     */
+    public static final int DEFAULT_TABLE_BITS = 20;
+    /**
+     * A score bound outside of all reachable scores
+     */
+    static final int INFINITY = WIN + 1;
+    /**
+     * The minimum number of pieces in the bag, for which the moves are generated in the order of the move generator
+     */
+    static final int ORDERING_PIECES = 4;
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+    private static final int POLL_MASK = 0x3ff; // the deadline is checked every 1024 nodes
+    private static final long MAX_BUDGET = Long.MAX_VALUE / 4000000; // milliseconds, the deadline must not overflow
+    private final TranspositionTable table;
+    private GameBoard board;
+    private int cells;
+    private int[][] moves = new int[0][]; // one move buffer per ply
+    private Tablebase tablebase;
+    private Canonicalizer canonicalizer; // for the tablebase lookups
+    private int probeLevel = -1; // the bag size, at which the tablebase is consulted
+    private long nodes;
+    private long probes;
+    private long hits;
+    private long tablebaseHits;
+    private long millis;
+    private int value;
+    private int bestCell;
+    private int bestPiece;
+    private int horizon = UNLIMITED; // the ply, at which unfinished positions are scored as draws
+    private boolean cut; // a position has been cut off at the horizon
+    private boolean timed;
+    private long deadline; // the value of System.nanoTime(), at which a timed search is aborted
+    private boolean aborted;
+    private boolean solved;
+    private int depth;
+
+    /**
+     * Creates a new solver with the default transposition table size
+     */
+    public Solver()
+    {
+        this(DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * Creates a new solver with a transposition table of <code>2 ^ bits</code> entries
+     * @param bits Transposition table size as power of two
+     */
+    public Solver(int bits)
+    {
+        this(new TranspositionTable(bits));
+    }
+
+    /**
+     * Creates a new solver using the given (possibly shared) transposition table
+     * @param table Transposition table
+     */
+    public Solver(TranspositionTable table)
+    {
+        super();
+
+        this.table = table;
+    }
+
+    /**
+     * Solves the given position. The board is modified during the search, but restored afterwards.<br/>
+     * If a piece has been selected, the player to move has to place it. Otherwise, the player to move has to select
+     * a piece for the opponent.
+     * @param board Game board
+     * @return The position's value for the player to move: 1 := win, 0 := draw, -1 := loss
+     */
+    public int solve(GameBoard board)
+    {
+        return solve(board, 0);
+    }
+
+    /**
+     * Solves the given position (see <code>solve(GameBoard)</code>), but aborts the search, as soon as the given time
+     * budget has been exceeded or the thread has been interrupted. The result of an aborted search is discarded
+     * (see <code>isSolved</code>).
+     * @param board Game board
+     * @param budget Time budget in milliseconds (0 := unlimited)
+     * @return The position's value for the player to move: 1 := win, 0 := draw or aborted, -1 := loss
+     */
+    public int solve(GameBoard board, long budget)
+    {
+        long start = System.nanoTime();
+
+        begin(board);
+
+        this.horizon = UNLIMITED;
+        this.timed = budget > 0;
+        this.deadline = deadline(start, budget);
+        this.depth = board.getBagSize() + (board.getSelected() == null ? 0 : 1);
+
+        searchRoot();
+
+        this.solved = !this.aborted;
+        this.timed = false;
+        this.millis = (System.nanoTime() - start) / 1000000;
+        this.board = null;
+
+        if (!this.solved)
+        {
+            this.value = 0;
+            this.bestCell = -1;
+            this.bestPiece = -1;
+            this.depth = 0;
+        }
+
+        return Integer.signum(this.value);
+    }
+
+    /**
+     * Searches the given position iteratively deepened until the time budget is used up, the position has been
+     * solved or the thread has been interrupted. Every iteration searches one ply (placement) deeper, scores the
+     * unfinished positions at its horizon as draws and searches the best moves of the previous iterations first.
+     * The result of an aborted iteration is discarded, but the first iteration is always completed. The search runs
+     * on the calling thread. The board is modified during the search, but restored afterwards.
+     * @param board Game board (unfinished)
+     * @param budget Time budget in milliseconds
+     * @return The position's value for the player to move: 1 := proven win, -1 := proven loss, 0 := draw or
+     * unknown (see <code>isSolved</code>)
+     */
+    public int think(GameBoard board, long budget)
+    {
+        long start = System.nanoTime();
+        int value = 0;
+        int cell = -1;
+        int piece = -1;
+
+        begin(board);
+
+        this.deadline = deadline(start, budget);
+        this.solved = false;
+        this.depth = 0;
+
+        for (int h = 1; !this.solved; h++)
+        {
+            this.horizon = h;
+            this.timed = h > 1;
+            this.cut = false;
+
+            searchRoot();
+
+            if (this.aborted)
+                break;
+
+            value = this.value;
+            cell = this.bestCell;
+            piece = this.bestPiece;
+            this.solved = !this.cut || (value != 0); // nothing has been cut off or the result is a proven win or loss
+            this.depth = h;
+        }
+
+        this.value = value;
+        this.bestCell = cell;
+        this.bestPiece = piece;
+        this.horizon = UNLIMITED;
+        this.timed = false;
+        this.millis = (System.nanoTime() - start) / 1000000;
+        this.board = null;
+
+        return Integer.signum(this.value);
+    }
+
+    /**
+     * Returns the number of plies (placements), which have been searched completely by the last search
+     * @return Search depth
+     */
+    public int getDepth()
+    {
+        return this.depth;
+    }
+
+    /**
+     * Returns, whether the value of the last search is exact (always true after a <code>solve</code>, which has not
+     * been aborted)
+     * @return True, if the position has been solved
+     */
+    public boolean isSolved()
+    {
+        return this.solved;
+    }
+
+    /**
+     * Returns the score of the last solved position (see <code>WIN</code>)
+     * @return Score
+     */
+    public int getScore()
+    {
+        return this.value;
+    }
+
+    /**
+     * Returns the cell (y * size + x) on which the selected piece should be placed
+     * @return Flat cell index or -1, if no piece had to be placed
+     */
+    public int getBestCell()
+    {
+        return this.bestCell;
+    }
+
+    /**
+     * Returns the piece, which should be selected for the opponent
+     * @return Piece value or -1, if no piece has to be selected (e.g. the game is won by the placement)
+     */
+    public int getBestPiece()
+    {
+        return this.bestPiece;
+    }
+
+    /**
+     * Returns the number of nodes visited during the last search
+     * @return Node count
+     */
+    public long getNodes()
+    {
+        return this.nodes;
+    }
+
+    /**
+     * Returns the duration of the last search
+     * @return Milliseconds
+     */
+    public long getMillis()
+    {
+        return this.millis;
+    }
+
+    /**
+     * Returns the number of visited nodes per second of the last search
+     * @return Nodes per second
+     */
+    public long getNodesPerSecond()
+    {
+        return this.nodes * 1000 / Math.max(this.millis, 1);
+    }
+
+    /**
+     * Returns the number of transposition table lookups of the last search
+     * @return Lookup count
+     */
+    long getProbes()
+    {
+        return this.probes;
+    }
+
+    /**
+     * Returns the number of successful transposition table lookups of the last search
+     * @return Hit count
+     */
+    long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of positions of the last search, which have been looked up in the tablebase
+     * @return Tablebase hit count
+     */
+    public long getTablebaseHits()
+    {
+        return this.tablebaseHits;
+    }
+
+    /**
+     * Sets the endgame tablebase, which is consulted for all positions with few enough pieces inside the bag
+     * @param tablebase Tablebase or null
+     */
+    public void setTablebase(Tablebase tablebase)
+    {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Returns the transposition table hit rate of the last search
+     * @return Hit rate between 0 and 1
+     */
+    public double getHitRate()
+    {
+        return this.probes == 0 ? 0 : (double) this.hits / this.probes;
+    }
+
+    /**
+     * Searches the given position without resetting the statistics (used by the parallel search for its subtrees)
+     * @param board Game board
+     * @param piece The piece, which has to be placed by the player to move
+     * @param bag All remaining pieces
+     * @param alpha Lower score bound
+     * @param beta Upper score bound
+     * @param ply Distance of the position to the search root (must be positive)
+     * @param timed True, if the search has to be aborted at the given deadline
+     * @param deadline The value of <code>System.nanoTime()</code>, at which the search is aborted
+     * @return Root-relative score (meaningless, if the search has been aborted, see <code>isAborted</code>)
+     */
+    int search(GameBoard board, int piece, int bag, int alpha, int beta, int ply, boolean timed, long deadline)
+    {
+        this.board = board;
+        this.cells = board.getSize() * board.getSize();
+        this.timed = timed;
+        this.deadline = deadline;
+        this.aborted = false;
+        allocate(Integer.bitCount(bag));
+
+        return negamax(piece, bag, alpha, beta, ply);
+    }
+
+    /**
+     * Returns, whether the last call of <code>search</code> has been aborted
+     * @return True, if the deadline has been exceeded
+     */
+    boolean isAborted()
+    {
+        return this.aborted;
+    }
+
+    // returns the System.nanoTime() value, at which the given budget (clamped, so that it cannot overflow) is used up
+    static long deadline(long start, long budget)
+    {
+        return start + Math.min(budget, MAX_BUDGET) * 1000000;
+    }
+
+    // resets the statistics and prepares the search of the given board
+    private void begin(GameBoard board)
+    {
+        this.board = board;
+        this.cells = board.getSize() * board.getSize();
+        this.nodes = 0;
+        this.probes = 0;
+        this.hits = 0;
+        this.tablebaseHits = 0;
+        this.aborted = false;
+
+        allocate(Integer.bitCount(board.getBagMask()) - 1);
+    }
+
+    // searches the root position with the current horizon
+    private void searchRoot()
+    {
+        int bag = this.board.getBagMask();
+
+        this.bestCell = -1;
+        this.bestPiece = -1;
+
+        if (this.board.getSelected() != null)
+            this.value = negamax(this.board.getSelected().value(), bag, -INFINITY, INFINITY, 0);
+        else
+        {
+            this.value = -INFINITY;
+
+            for (int n = 0x00; (n <= 0x0f) && !this.aborted; n++)
+                if ((bag & (1 << n)) != 0)
+                {
+                    int score = -negamax(n, bag & ~(1 << n), -INFINITY, -this.value, 1);
+
+                    if ((score > this.value) && !this.aborted)
+                    {
+                        this.value = score;
+                        this.bestPiece = n;
+                    }
+                }
+
+            if (this.value == -INFINITY)
+                this.value = 0; // nothing left to select
+        }
+    }
+
+    // allocates the move buffers and the canonicalizer for the current board (the search depth is limited by the
+    // number of pieces) and determines the tablebase probe level: As the tablebase holds every position reachable
+    // from its roots, only the first positions within its range are looked up
+    private void allocate(int pieces)
+    {
+        this.probeLevel = -1;
+
+        if ((this.tablebase != null) && this.tablebase.covers(this.board))
+        {
+            this.probeLevel = Math.min(pieces, this.tablebase.getPieces());
+
+            if ((this.canonicalizer == null) || (this.canonicalizer.getGeometry() != this.board.getGeometry()))
+                this.canonicalizer = new Canonicalizer(this.board.getGeometry());
+        }
+
+        if ((this.moves.length == 0) || (this.moves[0].length != this.cells * 0x10))
+        {
+            this.moves = new int[0x12][];
+
+            for (int i = 0; i < this.moves.length; i++)
+                this.moves[i] = new int[this.cells * 0x10];
+        }
+    }
+
+    // the negamax search: `piece` has to be placed by the player to move, `bag` holds all remaining pieces
+    private int negamax(int piece, int bag, int alpha, int beta, int ply)
+    {
+        WinTracker tracker = this.board.getTracker();
+
+        if ((++this.nodes & POLL_MASK) == 0 && this.timed)
+            this.aborted |= (System.nanoTime() - this.deadline > 0) || Thread.currentThread().isInterrupted();
+
+        if (this.aborted)
+            return 0;
+
+        if ((tracker.threats() & (1 << piece)) != 0) // the piece completes an open window
+        {
+            if (ply == 0)
+                for (int c = 0; (c < this.cells) && (this.bestCell < 0); c++)
+                    if (!this.board.isOccupied(c) && tracker.wouldWin(c, piece))
+                        this.bestCell = c;
+
+            return WIN - ply;
+        }
+
+        int free = this.board.freeCell();
+
+        if ((bag == 0) || (free < 0)) // the last piece is placed without a win
+        {
+            if (ply == 0)
+                this.bestCell = free;
+
+            return 0;
+        }
+
+        if ((ply > 0) && (Integer.bitCount(bag) == this.probeLevel))
+        {
+            int value = this.tablebase.probe(this.canonicalizer.key(this.board, piece));
+
+            if (value != 0)
+            {
+                int score = WIN - (ply + Tablebase.distance(value) - 1);
+
+                this.tablebaseHits++;
+
+                return Tablebase.result(value) == Tablebase.WIN ? score
+                     : Tablebase.result(value) == Tablebase.LOSS ? -score : 0;
+            }
+        }
+
+        if (ply >= this.horizon)
+        {
+            this.cut = true;
+
+            return 0;
+        }
+
+        long key = this.board.getHash() ^ Zobrist.selected(piece);
+        long entry = this.table.probe(key);
+        int ttMove = -1;
+        int origAlpha = alpha;
+
+        this.probes++;
+
+        if (entry != 0L)
+        {
+            int score = TranspositionTable.score(entry, ply);
+            int flag = TranspositionTable.flag(entry);
+
+            this.hits++;
+            ttMove = TranspositionTable.move(entry);
+
+            if ((ply > 0) && ((this.horizon == UNLIMITED) || proven(flag, score)))
+                if (flag == TranspositionTable.EXACT)
+                    return score;
+                else if ((flag == TranspositionTable.LOWER) && (score > alpha))
+                    alpha = score;
+                else if ((flag == TranspositionTable.UPPER) && (score < beta))
+                    beta = score;
+
+            if (alpha >= beta)
+                return score;
+        }
+
+        int best = -INFINITY;
+        int bestMove = -1;
+
+        if (ttMove >= 0)
+        {
+            int c = ttMove >>> 4;
+            int n = ttMove & 0x0f;
+
+            if (!this.board.isOccupied(c) && ((bag & (1 << n)) != 0))
+            {
+                best = child(c, piece, n, bag, alpha, beta, ply);
+                bestMove = ttMove;
+
+                if (best > alpha)
+                    alpha = best;
+            }
+        }
+
+        if (Integer.bitCount(bag) < ORDERING_PIECES) // close to the leaves, ordering costs more than it saves
+        {
+            for (int c = 0; (c < this.cells) && (alpha < beta); c++)
+                if (!this.board.isOccupied(c))
+                    for (int n = 0x00; (n <= 0x0f) && (alpha < beta); n++)
+                    {
+                        int move = (c << 4) | n;
+
+                        if (((bag & (1 << n)) == 0) || (move == ttMove))
+                            continue;
+
+                        int score = child(c, piece, n, bag, alpha, beta, ply);
+
+                        if (score > best)
+                        {
+                            best = score;
+                            bestMove = move;
+
+                            if (score > alpha)
+                                alpha = score;
+                        }
+                    }
+        }
+        else
+        {
+            int[] moves = this.moves[ply];
+            int count = this.board.generateMoves(piece, bag, moves, false);
+
+            for (int i = 0; (i < count) && (alpha < beta); i++)
+            {
+                int move = moves[i];
+
+                if (move == ttMove)
+                    continue;
+
+                int score = child(move >>> 4, piece, move & 0x0f, bag, alpha, beta, ply);
+
+                if (score > best)
+                {
+                    best = score;
+                    bestMove = move;
+
+                    if (score > alpha)
+                        alpha = score;
+                }
+            }
+        }
+
+        if (this.aborted) // the scores of an aborted search are incomplete
+            return 0;
+
+        this.table.store(key, bestMove, best <= origAlpha ? TranspositionTable.UPPER
+                                      : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT, best, ply);
+
+        if (ply == 0)
+        {
+            this.bestCell = bestMove >>> 4;
+            this.bestPiece = bestMove & 0x0f;
+        }
+
+        return best;
+    }
+
+    // checks, whether the given bound of a depth-limited search holds regardless of the horizon: only a forced win
+    // or a forced loss within the horizon remains valid for deeper searches
+    private static boolean proven(int flag, int score)
+    {
+        return (score > 0) && (flag != TranspositionTable.UPPER) || (score < 0) && (flag != TranspositionTable.LOWER);
+    }
+
+    // places `piece` on `cell`, searches the opponent's reply to the selection of `next` and takes the piece back
+    private int child(int cell, int piece, int next, int bag, int alpha, int beta, int ply)
+    {
+        this.board.put(cell, piece);
+
+        int score = -negamax(next, bag & ~(1 << next), -beta, -alpha, ply + 1);
+
+        this.board.take(cell);
+
+        return score;
+    }
+}
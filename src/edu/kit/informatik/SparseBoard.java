@@ -0,0 +1,471 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.Arrays;
+
+/**
+ * A game board variant for huge boards and configurable win lengths: A line of <code>length</code> adjacent pieces
+ * sharing an attribute wins.<br/>
+ * Only the occupied cells are stored (inside an open-addressing hash table), so the memory usage depends on the
+ * number of placed pieces and not on the board's area. A win is detected by walking at most
+ * <code>length - 1</code> cells in both directions of all four lines through the placed piece.
+ * @author Unknown6656
+ * @version 1
+ */
+public class SparseBoard
+{
+    /**
+     * The maximum win length (a line can not hold more pieces than the bag)
+     */
+    public static final int MAX_LENGTH = 0x10;
+    private static final int[][] DIRECTIONS = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { -1, 1 } }; // { dx, dy }
+    private static final int[] SPREAD = new int[0x10]; // attribute mask --> one nibble per attribute bit
+    private final int size;
+    private final boolean torus;
+    private final int length;
+    private long[] keys; // cell + 1 (0 := empty slot), cell := y * size + x
+    private byte[] values; // piece value per slot
+    private int count; // number of occupied cells
+    private byte player = GameBoard.NOT_DEFINED;
+    private int bag = 0xffff; // bit mask of all pieces inside the bag (bit index := piece value)
+    private Piece selected;
+    private int round;
+    private boolean finished;
+    private boolean drawn;
+
+
+    static
+    {
+        for (int m = 0x00; m <= 0x0f; m++)
+            SPREAD[m] = (m & 0x01) | ((m & 0x02) << 3) | ((m & 0x04) << 6) | ((m & 0x08) << 9);
+    }
+
+    /**
+     * Creates a new empty board
+     * @param size Game board size (number of rows and columns)
+     * @param torus Indicates, whether the board is a torus
+     * @param length Win length (between 2 and <code>MAX_LENGTH</code>)
+     */
+    public SparseBoard(int size, boolean torus, int length)
+    {
+        super();
+
+        if (size < 1)
+            throw new IllegalArgumentException("The board size must be positive.");
+        else if ((length < 2) || (length > MAX_LENGTH))
+            throw new IllegalArgumentException("The win length must be between 2 and " + MAX_LENGTH + ".");
+
+        this.size = size;
+        this.torus = torus;
+        this.length = length;
+        this.keys = new long[0x20];
+        this.values = new byte[0x20];
+    }
+
+    /**
+     * Returns the game board size
+     * @return Game board size
+     */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns, whether the board is a torus
+     * @return true == torus, false == standard
+     */
+    public boolean isTorus()
+    {
+        return this.torus;
+    }
+
+    /**
+     * Returns the number of pieces in a winning line
+     * @return Win length
+     */
+    public int getLength()
+    {
+        return this.length;
+    }
+
+    /**
+     * Returns the number of occupied cells
+     * @return Piece count
+     */
+    public int getPieceCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Returns the current player
+     * @return Current player
+     */
+    public byte getPlayer()
+    {
+        return this.player;
+    }
+
+    /**
+     * Sets the current player to the given value
+     * @param player New player value
+     */
+    public void setPlayer(byte player)
+    {
+        this.player = player;
+    }
+
+    /**
+     * Returns the selected piece
+     * @return The selected piece or null
+     */
+    public Piece getSelected()
+    {
+        return this.selected;
+    }
+
+    /**
+     * Returns the bit mask of all unused game pieces (see <code>GameBoard.getBagMask</code>)
+     * @return Bag bit mask
+     */
+    public int getBagMask()
+    {
+        return this.bag;
+    }
+
+    /**
+     * Returns, whether the given piece is still inside the bag
+     * @param piece Piece value
+     * @return True, if the piece has not been used yet
+     */
+    public boolean isInBag(int piece)
+    {
+        return (piece >= 0x00) && (piece <= 0x0f) && ((this.bag & (1 << piece)) != 0);
+    }
+
+    /**
+     * Returns the round counter, which is incremented after every placement, if the game continues
+     * @return Round
+     */
+    public int getRound()
+    {
+        return this.round;
+    }
+
+    /**
+     * Returns, whether the game has been won
+     * @return Finished
+     */
+    public boolean isFinished()
+    {
+        return this.finished;
+    }
+
+    /**
+     * Selects the given piece from the bag for the player to move (see <code>GameBoard.selectPiece</code>). The
+     * piece is removed from the bag.
+     * @param piece Piece value
+     * @return Action return code<br/>
+     * 0 := OK<br/>
+     * 1 := Invalid piece value<br/>
+     * 2 := Piece already used<br/>
+     * 3 := Another piece is already selected
+     */
+    public byte selectPiece(int piece)
+    {
+        if ((piece < 0x00) || (piece > 0x0f))
+            return 1;
+        else if (!isInBag(piece))
+            return 2;
+        else if (this.selected != null)
+            return 3;
+
+        this.selected = Piece.of(piece);
+        this.bag &= ~(1 << piece);
+
+        return 0;
+    }
+
+    /**
+     * Places the selected piece on the given position (see <code>GameBoard.placeSelected</code>). If the game
+     * continues, the selection is cleared, the next player is to move and the round counter is incremented.
+     * @param x Game piece X (horizontal) position
+     * @param y Game piece Y (vertical) position
+     * @return Action return code<br/>
+     * 0 := OK, the game continues<br/>
+     * 1 := Outside the field / Invalid position<br/>
+     * 2 := No piece selected<br/>
+     * 3 := Cell already in use<br/>
+     * 4 := OK, the player to move has won<br/>
+     * 5 := OK, the bag is empty (draw)<br/>
+     * 6 := The game has already been won or drawn
+     */
+    public byte placeSelected(int x, int y)
+    {
+        long cell = cellOf(x, y);
+
+        if (this.finished || this.drawn)
+            return 6;
+        else if (cell < 0)
+            return 1;
+        else if (this.selected == null)
+            return 2;
+        else if (slotOf(cell) >= 0)
+            return 3;
+
+        if (put(x, y, this.selected.value()))
+        {
+            this.finished = true;
+
+            return 4;
+        }
+        else if (this.bag == 0)
+        {
+            this.drawn = true;
+
+            return 5;
+        }
+
+        this.selected = null;
+        this.player = (byte) (this.player == 1 ? 0 : 1);
+        this.round++;
+
+        return 0;
+    }
+
+    /**
+     * Returns the piece on the given position
+     * @param x Game piece X (horizontal) position
+     * @param y Game piece Y (vertical) position
+     * @return Game piece or null, if the cell is empty or outside the (standard) board
+     */
+    public Piece getPiece(int x, int y)
+    {
+        int value = valueAt(cellOf(x, y));
+
+        return value < 0 ? null : Piece.of(value);
+    }
+
+    /**
+     * Returns, whether the piece on the given position is part of a winning line
+     * @param x Game piece X (horizontal) position
+     * @param y Game piece Y (vertical) position
+     * @return Winner
+     */
+    public boolean isWin(int x, int y)
+    {
+        long cell = cellOf(x, y);
+        int value = valueAt(cell);
+
+        if ((value < 0) || (this.size < this.length)) // a line must not contain a cell twice
+            return false;
+
+        x = (int) (cell % this.size);
+        y = (int) (cell / this.size);
+
+        for (int[] dir : DIRECTIONS)
+        {
+            int forward = reach(x, y, dir[0], dir[1], value);
+            int backward = reach(x, y, -dir[0], -dir[1], value);
+
+            for (int b = 0; b < 0x10; b += 4)
+                if (((forward >>> b) & 0x0f) + ((backward >>> b) & 0x0f) + 1 >= this.length)
+                    return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the string representation of the given row (see <code>GameBoard.printRow</code>)
+     * @param row Row
+     * @return String representation or null, if the row does not exist
+     */
+    public String printRow(int row)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        return appendLine(sb, row, true) ? sb.toString() : null;
+    }
+
+    /**
+     * Returns the string representation of the given column (see <code>GameBoard.printColumn</code>)
+     * @param col Column
+     * @return String representation or null, if the column does not exist
+     */
+    public String printColumn(int col)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        return appendLine(sb, col, false) ? sb.toString() : null;
+    }
+
+    /**
+     * Places the given piece on the given empty position without any validation and without touching the bag
+     * (used by search engines, see <code>take</code> for the inverse operation)
+     * @param x Game piece X (horizontal) position
+     * @param y Game piece Y (vertical) position
+     * @param piece Piece value
+     * @return true, if the placement wins the game
+     */
+    boolean put(int x, int y, int piece)
+    {
+        long cell = cellOf(x, y);
+
+        if ((this.count + 1) * 2 > this.keys.length)
+            rehash(this.keys.length * 2);
+
+        int slot = hash(cell);
+
+        while (this.keys[slot] != 0L)
+            slot = (slot + 1) & (this.keys.length - 1);
+
+        this.keys[slot] = cell + 1;
+        this.values[slot] = (byte) piece;
+        this.count++;
+
+        return isWin(x, y);
+    }
+
+    /**
+     * Removes the piece from the given occupied position (the inverse operation of <code>put</code>)
+     * @param x Game piece X (horizontal) position
+     * @param y Game piece Y (vertical) position
+     */
+    void take(int x, int y)
+    {
+        int slot = slotOf(cellOf(x, y));
+        int mask = this.keys.length - 1;
+
+        if (slot < 0)
+            return;
+
+        // backward-shift deletion: move all following entries of the probe sequence into the gap
+        for (int next = (slot + 1) & mask; this.keys[next] != 0L; next = (next + 1) & mask)
+        {
+            int home = hash(this.keys[next] - 1);
+
+            if (((next - home) & mask) >= ((next - slot) & mask))
+            {
+                this.keys[slot] = this.keys[next];
+                this.values[slot] = this.values[next];
+                slot = next;
+            }
+        }
+
+        this.keys[slot] = 0L;
+        this.count--;
+    }
+
+    // returns the number of cells in the given direction, which share each attribute with the given value (one
+    // nibble per attribute bit, at most `length - 1`)
+    private int reach(int x, int y, int dx, int dy, int value)
+    {
+        int common = 0x0f;
+        int result = 0;
+
+        for (int i = 1; i < this.length; i++)
+        {
+            int other = valueAt(cellOf(x + dx * i, y + dy * i));
+
+            if (other < 0)
+                break;
+
+            common &= ~(other ^ value);
+
+            if (common == 0)
+                break;
+
+            result += SPREAD[common];
+        }
+
+        return result;
+    }
+
+    // appends the given row (or column) to the given string builder and returns false, if it does not exist
+    private boolean appendLine(StringBuilder sb, int line, boolean row)
+    {
+        int nline = this.torus ? Final02.mod(line, this.size) : line;
+
+        if ((nline < 0) || (nline >= this.size))
+            return false;
+
+        for (int i = 0; i < this.size; i++)
+        {
+            int value = valueAt(row ? (long) nline * this.size + i : (long) i * this.size + nline);
+
+            if (i > 0)
+                sb.append(' ');
+
+            if (value < 0)
+                sb.append('#');
+            else
+                sb.append(value);
+        }
+
+        return true;
+    }
+
+    // returns the cell (y * size + x) of the given position or -1, if the position is outside the (standard) board
+    private long cellOf(int x, int y)
+    {
+        if (this.torus)
+            return (long) Final02.mod(y, this.size) * this.size + Final02.mod(x, this.size);
+        else if ((x < 0) || (y < 0) || (x >= this.size) || (y >= this.size))
+            return -1;
+
+        return (long) y * this.size + x;
+    }
+
+    // returns the piece value on the given cell or -1, if the cell is empty or invalid
+    private int valueAt(long cell)
+    {
+        int slot = cell < 0 ? -1 : slotOf(cell);
+
+        return slot < 0 ? -1 : this.values[slot];
+    }
+
+    // returns the hash table slot of the given cell or -1, if the cell is empty
+    private int slotOf(long cell)
+    {
+        for (int slot = hash(cell); this.keys[slot] != 0L; slot = (slot + 1) & (this.keys.length - 1))
+            if (this.keys[slot] == cell + 1)
+                return slot;
+
+        return -1;
+    }
+
+    // returns the home slot of the given cell
+    private int hash(long cell)
+    {
+        long h = cell * 0x9e3779b97f4a7c15L;
+
+        return (int) (h >>> 0x20) & (this.keys.length - 1);
+    }
+
+    // resizes the hash table to the given capacity (power of two)
+    private void rehash(int capacity)
+    {
+        long[] oldKeys = this.keys;
+        byte[] oldValues = this.values;
+
+        this.keys = new long[capacity];
+        this.values = new byte[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != 0L)
+            {
+                int slot = hash(oldKeys[i] - 1);
+
+                while (this.keys[slot] != 0L)
+                    slot = (slot + 1) & (capacity - 1);
+
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only endgame tablebase, which is memory-mapped from a file written by the <code>TablebaseGenerator</code>.
+ * <br/>
+ * The tablebase stores the game-theoretic value of positions, in which a piece has been selected and at most
+ * <code>getPieces()</code> pieces remain inside the bag. Positions are identified by their canonical key (see
+ * <code>Canonicalizer</code>), so every symmetry class is stored only once. Lookups read the mapped file directly and
+ * do not allocate any heap memory; the mapping can be shared between threads.<br/>
+ * <br/>
+ * File layout (big endian):
+ * <pre>
+ * 0x00  int   magic "QTB1"
+ * 0x04  int   board size
+ * 0x08  int   flags (bit 0 := torus)
+ * 0x0c  int   maximum number of remaining pieces
+ * 0x10  int   table size as power of two
+ * 0x14  int   reserved
+ * 0x18  long  number of stored positions
+ * 0x20  long[2 ^ bits] open-addressing hash table (linear probing, 0 := empty slot), every slot holds the canonical
+ *       key (bits 8..63) and the value (bits 0..7, see <code>result</code> and <code>distance</code>)
+ * </pre>
+ * @author Unknown6656
+ * @version 1
+ */
+public class Tablebase
+{
+    /**
+     * The file's magic number ("QTB1")
+     */
+    public static final int MAGIC = 0x51544231;
+    /**
+     * The size of the file header in bytes
+     */
+    public static final int HEADER = 0x20;
+    /**
+     * Result: The player to move wins
+     */
+    public static final int WIN = 1;
+    /**
+     * Result: The player to move loses
+     */
+    public static final int LOSS = 2;
+    /**
+     * Result: The game ends in a draw
+     */
+    public static final int DRAW = 3;
+    /**
+     * The maximum table size as power of two (the mapped file must not exceed 2 GiB)
+     */
+    public static final int MAX_BITS = 0x1b;
+    private static final long KEY_MASK = ~0xffL;
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final boolean torus;
+    private final int pieces;
+    private final int mask;
+    private final long entries;
+
+
+    // creates a new tablebase on the given mapped file
+    private Tablebase(MappedByteBuffer buffer) throws IOException
+    {
+        super();
+
+        this.buffer = buffer;
+
+        if ((buffer.capacity() < HEADER) || (buffer.getInt(0x00) != MAGIC))
+            throw new IOException("The file is not a tablebase.");
+
+        int bits = buffer.getInt(0x10);
+
+        this.size = buffer.getInt(0x04);
+        this.torus = (buffer.getInt(0x08) & 0x01) != 0;
+        this.pieces = buffer.getInt(0x0c);
+        this.mask = (1 << bits) - 1;
+        this.entries = buffer.getLong(0x18);
+
+        // the generator keeps at least half of the slots empty, so every probe sequence ends at an empty slot
+        if ((bits < 0) || (bits > MAX_BITS) || (buffer.capacity() != HEADER + ((long) this.mask + 1) * 8)
+         || (this.entries < 0) || (this.entries * 2 > (long) this.mask + 1))
+            throw new IOException("The tablebase file is truncated or corrupt.");
+    }
+
+    /**
+     * Maps the given tablebase file into memory
+     * @param path File path
+     * @return Tablebase
+     * @throws IOException Thrown, if the file could not be read or is not a valid tablebase
+     */
+    public static Tablebase open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            // the mapping stays valid after the channel has been closed
+            return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the game board size of all stored positions
+     * @return Game board size
+     */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns, whether the stored positions are torus positions
+     * @return true == torus, false == standard
+     */
+    public boolean isTorus()
+    {
+        return this.torus;
+    }
+
+    /**
+     * Returns the maximum number of pieces remaining inside the bag of all stored positions (the selected piece is
+     * not counted)
+     * @return Piece count
+     */
+    public int getPieces()
+    {
+        return this.pieces;
+    }
+
+    /**
+     * Returns the number of stored positions
+     * @return Position count
+     */
+    public long getEntries()
+    {
+        return this.entries;
+    }
+
+    /**
+     * Returns, whether the tablebase contains positions of the given board's geometry
+     * @param board Game board
+     * @return True, if the board size and mode match
+     */
+    public boolean covers(GameBoard board)
+    {
+        return (board.getSize() == this.size) && (board.isTorus() == this.torus);
+    }
+
+    /**
+     * Looks up the position with the given canonical key
+     * @param key Canonical key (see <code>Canonicalizer.key</code>)
+     * @return The stored value (see <code>result</code> and <code>distance</code>) or 0, if the position is not stored
+     */
+    public int probe(long key)
+    {
+        long stored = slotKey(key);
+        int slot = slot(key, this.mask);
+
+        // the probe visits every slot at most once, even if the (corrupt) table contains no empty slot
+        for (long i = 0; i <= this.mask; i++, slot = (slot + 1) & this.mask)
+        {
+            long entry = this.buffer.getLong(HEADER + slot * 8);
+
+            if (entry == 0L)
+                return 0;
+            else if ((entry & KEY_MASK) == stored)
+                return (int) entry & 0xff;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the result of the given value from the perspective of the player to move
+     * @param value Stored value
+     * @return <code>WIN</code>, <code>LOSS</code> or <code>DRAW</code>
+     */
+    public static int result(int value)
+    {
+        return value & 0x03;
+    }
+
+    /**
+     * Returns the number of placements until the end of the game (with perfect play), which includes the placement
+     * of the player to move
+     * @param value Stored value
+     * @return Distance in plies
+     */
+    public static int distance(int value)
+    {
+        return value >>> 2;
+    }
+
+    /**
+     * Packs the given result and distance into a stored value
+     * @param result <code>WIN</code>, <code>LOSS</code> or <code>DRAW</code>
+     * @param distance Distance in plies (at most 63)
+     * @return Stored value
+     */
+    static int value(int result, int distance)
+    {
+        return (distance << 2) | result;
+    }
+
+    /**
+     * Returns the key bits stored for the given canonical key (never 0)
+     * @param key Canonical key
+     * @return Stored key bits
+     */
+    static long slotKey(long key)
+    {
+        return (key & KEY_MASK) == 0L ? 0x100L : key & KEY_MASK;
+    }
+
+    /**
+     * Returns the home slot of the given canonical key (or stored entry, as only the stored key bits are used)
+     * @param key Canonical key or entry
+     * @param mask Table size - 1
+     * @return Slot index
+     */
+    static int slot(long key, int mask)
+    {
+        long k = slotKey(key);
+
+        return (int) ((k >>> 8) ^ (k >>> 0x28)) & mask;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Generates an endgame <code>Tablebase</code>: Starting at root positions with at most <code>pieces</code> pieces
+ * inside the bag, every reachable position is solved by a complete minimax search and stored once per symmetry
+ * class (see <code>Canonicalizer</code>) together with its result and distance.<br/>
+ * Positions, in which the selected piece wins immediately or the last piece is placed, are not stored, as every
+ * engine detects them without a lookup.
+ * @author Unknown6656
+ * @version 1
+ */
+public class TablebaseGenerator
+{
+    private static final int INITIAL_BITS = 0x10;
+    private static final int NO_WIN = 0x40; // score offset, larger than any distance
+    private final GameBoard board;
+    private final Canonicalizer canonicalizer;
+    private final int pieces;
+    private final int cells;
+    private long[] table; // see Tablebase
+    private int bits;
+    private long entries;
+    private long nodes;
+
+
+    /**
+     * Creates a new generator for the given game board geometry
+     * @param size Game board size
+     * @param torus Indicates, whether the game board is a torus
+     * @param pieces Maximum number of pieces inside the bag
+     */
+    public TablebaseGenerator(int size, boolean torus, int pieces)
+    {
+        super();
+
+        if ((pieces < 1) || (pieces > 0x0f))
+            throw new IllegalArgumentException("The number of pieces must be between 1 and 15.");
+
+        this.board = new GameBoard(size, torus);
+        this.canonicalizer = new Canonicalizer(this.board.getGeometry());
+        this.pieces = pieces;
+        this.cells = size * size;
+        this.bits = INITIAL_BITS;
+        this.table = new long[1 << this.bits];
+    }
+
+    /**
+     * The generator's entry point
+     * @param args Command line arguments: `standard` or `torus`, the maximum number of pieces inside the bag, the
+     * number of random root positions, the output file and an optional random seed (separated by spaces)
+     */
+    public static void main(String[] args)
+    {
+        if ((args.length < 4) || (!args[0].equalsIgnoreCase("torus") && !args[0].equalsIgnoreCase("standard")))
+        {
+            Final02.out("Error, Expected `torus` or `standard`, the number of pieces, the number of root positions "
+                      + "and the output file as arguments.");
+
+            System.exit(1);
+            return;
+        }
+
+        try
+        {
+            TablebaseGenerator gen = new TablebaseGenerator(6, args[0].equalsIgnoreCase("torus"),
+                                                            Integer.parseInt(args[1]));
+            long start = System.nanoTime();
+            int roots = gen.generate(Integer.parseInt(args[2]),
+                                     new Random(args.length > 4 ? Long.parseLong(args[4]) : 0));
+
+            gen.write(Paths.get(args[3]));
+
+            Final02.out("%d roots, %d positions, %d nodes, %d ms", roots, gen.getEntries(), gen.getNodes(),
+                        (System.nanoTime() - start) / 1000000);
+        }
+        catch (NumberFormatException ex)
+        {
+            Final02.out("Error, At least one argument could not be parsed as an integer value.");
+
+            System.exit(1);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            Final02.out("Error, %s", ex.getMessage());
+
+            System.exit(1);
+        }
+        catch (IOException ex)
+        {
+            Final02.out("Error, %s", ex.getMessage());
+
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays the given number of random games until at most <code>pieces</code> pieces are left inside the bag and
+     * solves all positions reachable from there
+     * @param roots Number of random games
+     * @param random Random number generator
+     * @return Number of root positions (games, which have been won before reaching the endgame, are skipped)
+     */
+    public int generate(int roots, Random random)
+    {
+        int solved = 0;
+
+        for (int i = 0; i < roots; i++)
+        {
+            int bag = 0xffff;
+            int piece = random.nextInt(0x10);
+            int[] path = new int[0x10];
+            int depth = 0;
+
+            bag &= ~(1 << piece);
+
+            while (Integer.bitCount(bag) > this.pieces)
+            {
+                int cell = randomCell(piece, random);
+
+                if (cell < 0) // every free cell wins
+                    break;
+
+                this.board.put(cell, piece);
+                path[depth++] = cell;
+
+                int k = random.nextInt(Integer.bitCount(bag));
+                int rest = bag;
+
+                while (k-- > 0)
+                    rest &= rest - 1;
+
+                piece = Integer.numberOfTrailingZeros(rest);
+                bag &= ~(1 << piece);
+            }
+
+            if (Integer.bitCount(bag) <= this.pieces)
+            {
+                solve(piece, bag);
+                solved++;
+            }
+
+            while (depth > 0)
+                this.board.take(path[--depth]);
+        }
+
+        return solved;
+    }
+
+    /**
+     * Writes the tablebase file
+     * @param path File path
+     * @throws IOException Thrown, if the file could not be written
+     */
+    public void write(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(0x10000);
+
+            buffer.putInt(Tablebase.MAGIC)
+                  .putInt(this.board.getSize())
+                  .putInt(this.board.isTorus() ? 1 : 0)
+                  .putInt(this.pieces)
+                  .putInt(this.bits)
+                  .putInt(0)
+                  .putLong(this.entries);
+
+            for (long entry : this.table)
+            {
+                if (!buffer.hasRemaining())
+                    flush(channel, buffer);
+
+                buffer.putLong(entry);
+            }
+
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Returns the number of stored positions
+     * @return Position count
+     */
+    public long getEntries()
+    {
+        return this.entries;
+    }
+
+    /**
+     * Returns the number of searched nodes
+     * @return Node count
+     */
+    public long getNodes()
+    {
+        return this.nodes;
+    }
+
+    // solves the position, in which `piece` has to be placed and `bag` holds all remaining pieces, and returns its
+    // value (see Tablebase.value)
+    private int solve(int piece, int bag)
+    {
+        WinTracker tracker = this.board.getTracker();
+
+        this.nodes++;
+
+        for (int c = 0; c < this.cells; c++)
+            if (!this.board.isOccupied(c) && tracker.wouldWin(c, piece))
+                return Tablebase.value(Tablebase.WIN, 1);
+
+        if (bag == 0)
+            return Tablebase.value(Tablebase.DRAW, 1);
+
+        long key = this.canonicalizer.key(this.board, piece);
+        int known = lookup(key);
+
+        if (known != 0)
+            return known;
+
+        int best = 0;
+
+        for (int c = 0; c < this.cells; c++)
+            if (!this.board.isOccupied(c))
+                for (int rest = bag; rest != 0; rest &= rest - 1)
+                {
+                    int next = Integer.numberOfTrailingZeros(rest);
+
+                    this.board.put(c, piece);
+
+                    int value = negate(solve(next, bag & ~(1 << next)));
+
+                    this.board.take(c);
+
+                    if ((best == 0) || (score(value) > score(best)))
+                        best = value;
+
+                    if (best == Tablebase.value(Tablebase.WIN, 3)) // the fastest possible win without an immediate one
+                    {
+                        store(key, best);
+
+                        return best;
+                    }
+                }
+
+        store(key, best);
+
+        return best;
+    }
+
+    // returns the value of the parent position (the opponent's view, one placement further away from the end)
+    private static int negate(int value)
+    {
+        int result = Tablebase.result(value);
+
+        return Tablebase.value(result == Tablebase.WIN ? Tablebase.LOSS : result == Tablebase.LOSS ? Tablebase.WIN
+                               : Tablebase.DRAW, Tablebase.distance(value) + 1);
+    }
+
+    // returns a comparable score of the given value: fast wins > slow wins > draws > slow losses > fast losses
+    private static int score(int value)
+    {
+        int result = Tablebase.result(value);
+        int distance = Tablebase.distance(value);
+
+        return result == Tablebase.WIN ? NO_WIN - distance : result == Tablebase.LOSS ? distance - NO_WIN : 0;
+    }
+
+    // returns a random free cell, on which the given piece does not win, or -1
+    private int randomCell(int piece, Random random)
+    {
+        int[] free = new int[this.cells];
+        int count = 0;
+
+        for (int c = 0; c < this.cells; c++)
+            if (!this.board.isOccupied(c) && !this.board.getTracker().wouldWin(c, piece))
+                free[count++] = c;
+
+        return count == 0 ? -1 : free[random.nextInt(count)];
+    }
+
+    // returns the stored value of the given key or 0
+    private int lookup(long key)
+    {
+        long stored = Tablebase.slotKey(key);
+        int mask = this.table.length - 1;
+
+        for (int slot = Tablebase.slot(key, mask); this.table[slot] != 0L; slot = (slot + 1) & mask)
+            if ((this.table[slot] & ~0xffL) == stored)
+                return (int) this.table[slot] & 0xff;
+
+        return 0;
+    }
+
+    // stores the given value (the table is kept at most half full)
+    private void store(long key, int value)
+    {
+        if ((this.entries + 1) * 2 > this.table.length)
+        {
+            if (this.bits == Tablebase.MAX_BITS)
+                throw new IllegalArgumentException("The tablebase exceeds the maximum size.");
+
+            long[] old = this.table;
+
+            this.bits++;
+            this.table = new long[1 << this.bits];
+
+            for (long entry : old)
+                if (entry != 0L)
+                    insert(entry);
+        }
+
+        insert(Tablebase.slotKey(key) | value);
+        this.entries++;
+    }
+
+    // inserts the given entry into a free slot
+    private void insert(long entry)
+    {
+        int mask = this.table.length - 1;
+        int slot = Tablebase.slot(entry, mask);
+
+        while (this.table[slot] != 0L)
+            slot = (slot + 1) & mask;
+
+        this.table[slot] = entry;
+    }
+
+    // writes the buffered bytes to the given channel
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays a round-robin self-play tournament between engines (see <code>Engine</code>) inside the current process.
+ * Every engine pair plays the same number of games, which alternate between the standard and the torus mode and
+ * between both engines as the starting player. The games are distributed in blocks of <code>BLOCK</code> games over
+ * one worker per thread, which owns its engine instances and game boards, so the games do not share any state.<br/>
+ * Every game uses its own random seed (derived from the tournament seed and the game's index), so the results do not
+ * depend on the number of threads.<br/>
+ * <br/>
+ * Available engines:
+ * <pre>
+ * random   places and selects randomly
+ * greedy   wins immediately, if possible, and avoids handing over a piece, which lets the opponent win immediately
+ * solverN  plays like `greedy`, but solves the position exactly, as soon as at most N pieces are left inside the bag
+ * </pre>
+ * @author Unknown6656
+ * @version 1
+ */
+public class Tournament
+{
+    /**
+     * The number of games, which a worker takes at once
+     */
+    public static final int BLOCK = 0x100;
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+    private static final int SOLVER_TABLE_BITS = 0x10;
+    private static final double Z95 = 1.959963984540054; // two-sided 95% quantile of the normal distribution
+    private final int threads;
+    private final ExecutorService executor;
+    private String[] engines;
+    private long[][] results; // pair --> mode * 3 + (0 := first engine wins, 1 := draw, 2 := second engine wins)
+    private long millis;
+
+
+    /**
+     * Creates a new tournament runner with one worker thread per available processor
+     */
+    public Tournament()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new tournament runner with the given number of worker threads
+     * @param threads Number of worker threads
+     */
+    public Tournament(int threads)
+    {
+        super();
+
+        if (threads < 1)
+            throw new IllegalArgumentException("The thread count must be positive.");
+
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "tournament-worker");
+
+                t.setDaemon(true);
+
+                return t;
+            }
+        });
+    }
+
+    /**
+     * The tournament's entry point
+     * @param args Command line arguments: The number of games per engine pair and at least two engine names,
+     * optionally followed by `threads=N` and `seed=N` (separated by spaces)
+     */
+    public static void main(String[] args)
+    {
+        List<String> engines = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 0;
+        Tournament tournament = null;
+
+        try
+        {
+            for (int i = 1; i < args.length; i++)
+                if (args[i].startsWith("threads="))
+                    threads = Integer.parseInt(args[i].substring(8));
+                else if (args[i].startsWith("seed="))
+                    seed = Long.parseLong(args[i].substring(5));
+                else
+                    engines.add(args[i]);
+
+            if ((args.length < 1) || (engines.size() < 2))
+                throw new IllegalArgumentException("Expected the number of games per pair and at least two engines "
+                                                 + "(random, greedy or solverN) as arguments.");
+
+            tournament = new Tournament(threads);
+            tournament.play(engines.toArray(new String[engines.size()]), Integer.parseInt(args[0]), seed);
+            tournament.print();
+        }
+        catch (NumberFormatException ex)
+        {
+            Final02.out("Error, At least one argument could not be parsed as an integer value.");
+
+            System.exit(1);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            Final02.out("Error, %s", ex.getMessage());
+
+            System.exit(1);
+        }
+        finally
+        {
+            if (tournament != null)
+                tournament.shutdown();
+        }
+    }
+
+    /**
+     * Creates a new instance of the given engine
+     * @param name Engine name (see the class description)
+     * @return Engine
+     */
+    public static Engine engine(String name)
+    {
+        if (name.equals("random"))
+            return new RandomEngine();
+        else if (name.equals("greedy"))
+            return new GreedyEngine(name);
+        else if (name.startsWith("solver") && name.length() > 6)
+            try
+            {
+                return new SolverEngine(name, Integer.parseInt(name.substring(6)));
+            }
+            catch (NumberFormatException ex)
+            {
+                // handled below
+            }
+
+        throw new IllegalArgumentException(String.format("The engine `%s` is unknown.", name));
+    }
+
+    /**
+     * Plays the given number of games between every pair of the given engines
+     * @param names Engine names (see the class description)
+     * @param games Number of games per pair
+     * @param seed Tournament seed
+     */
+    public void play(final String[] names, final int games, final long seed)
+    {
+        if (games < 1)
+            throw new IllegalArgumentException("The number of games must be positive.");
+
+        for (String name : names)
+            engine(name); // validates the names before any game is played
+
+        final int pairs = names.length * (names.length - 1) / 2;
+        final AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+        List<Future<long[][]>> futures = new ArrayList<Future<long[][]>>(this.threads);
+
+        for (int i = 0; i < this.threads; i++)
+            futures.add(this.executor.submit(new Callable<long[][]>()
+            {
+                @Override
+                public long[][] call()
+                {
+                    return new Worker(names, games, seed).run(next, (long) pairs * games);
+                }
+            }));
+
+        this.engines = names.clone();
+        this.results = new long[pairs][6];
+
+        for (Future<long[][]> future : futures)
+        {
+            long[][] res = await(future);
+
+            for (int p = 0; p < pairs; p++)
+                for (int r = 0; r < 6; r++)
+                    this.results[p][r] += res[p][r];
+        }
+
+        this.millis = (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Prints the results of every pair and the rating list of the last tournament: The Elo difference of a pair is
+     * the one of the first engine against the second one, the rating of an engine is its performance against all
+     * other engines. The intervals are 95% confidence intervals.
+     */
+    public void print()
+    {
+        double[][] engineScores = new double[this.engines.length][3]; // games, points, squared points
+
+        for (int a = 0, p = 0; a < this.engines.length; a++)
+            for (int b = a + 1; b < this.engines.length; b++, p++)
+            {
+                long[] res = this.results[p];
+                long wins = res[0] + res[3];
+                long draws = res[1] + res[4];
+                long losses = res[2] + res[5];
+
+                double[] pair = new double[3];
+
+                add(pair, wins, draws, losses);
+                add(engineScores[a], wins, draws, losses);
+                add(engineScores[b], losses, draws, wins);
+
+                Final02.out("%s vs %s: %d games, +%d =%d -%d (standard +%d =%d -%d, torus +%d =%d -%d), %s",
+                            this.engines[a], this.engines[b], wins + draws + losses, wins, draws, losses, res[0],
+                            res[1], res[2], res[3], res[4], res[5], rating(pair[0], pair[1], pair[2]));
+            }
+
+        for (int e = 0; e < this.engines.length; e++)
+        {
+            double[] s = engineScores[e];
+
+            Final02.out("%s: %.0f games, %s", this.engines[e], s[0], rating(s[0], s[1], s[2]));
+        }
+
+        long games = 0;
+
+        for (long[] res : this.results)
+            for (long r : res)
+                games += r;
+
+        Final02.out("%d games, %d ms, %d games/s, %d threads", games, this.millis,
+                    games * 1000 / Math.max(this.millis, 1), this.threads);
+    }
+
+    /**
+     * Returns the results of the last tournament
+     * @return Pair (in the order 0-1, 0-2, ..., 1-2, ...) --> mode * 3 + result, where the result is 0 := the first
+     * engine of the pair has won, 1 := draw, 2 := the second engine has won (mode 0 := standard, 1 := torus)
+     */
+    public long[][] getResults()
+    {
+        return this.results;
+    }
+
+    /**
+     * Stops all worker threads
+     */
+    public void shutdown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Returns the Elo difference, which corresponds to the given expected score
+     * @param score Expected score between 0 and 1
+     * @return Elo difference (infinite for the scores 0 and 1)
+     */
+    public static double elo(double score)
+    {
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    // adds the given results to the given games/points/squared points accumulator
+    private static void add(double[] acc, long wins, long draws, long losses)
+    {
+        acc[0] += wins + draws + losses;
+        acc[1] += wins + draws * 0.5;
+        acc[2] += wins + draws * 0.25;
+    }
+
+    // formats the score and Elo difference with the confidence interval of the given games/points/squared points
+    private static String rating(double games, double points, double squares)
+    {
+        double score = points / games;
+        double error = Z95 * Math.sqrt(Math.max(squares / games - score * score, 0) / games);
+
+        return String.format("score %.1f%%, Elo %+.0f [%+.0f, %+.0f]", score * 100, elo(score),
+                             elo(Math.max(score - error, 0)), elo(Math.min(score + error, 1)));
+    }
+
+    // waits for the given worker's result
+    private static long[][] await(Future<long[][]> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(ex);
+        }
+        catch (ExecutionException ex)
+        {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    // plays blocks of games with its own engines and boards
+    private static final class Worker
+    {
+        private final Engine[] engines;
+        private final int[] pairs; // pair --> first engine << 16 | second engine
+        private final int games;
+        private final long seed;
+        private final GameBoard[] boards = { new GameBoard(6, false), new GameBoard(6, true) };
+        private final Random random = new Random();
+
+
+        Worker(String[] names, int games, long seed)
+        {
+            super();
+
+            this.engines = new Engine[names.length];
+            this.pairs = new int[names.length * (names.length - 1) / 2];
+            this.games = games;
+            this.seed = seed;
+
+            for (int a = 0, p = 0; a < names.length; a++)
+            {
+                this.engines[a] = engine(names[a]);
+
+                for (int b = a + 1; b < names.length; b++)
+                    this.pairs[p++] = (a << 16) | b;
+            }
+        }
+
+        long[][] run(AtomicLong next, long total)
+        {
+            long[][] res = new long[this.pairs.length][6];
+
+            for (long start = next.getAndAdd(BLOCK); start < total; start = next.getAndAdd(BLOCK))
+                for (long g = start; g < Math.min(start + BLOCK, total); g++)
+                {
+                    int pair = (int) (g / this.games);
+                    int game = (int) (g % this.games);
+                    int mode = (game >>> 1) & 1;
+                    Engine a = this.engines[this.pairs[pair] >>> 16];
+                    Engine b = this.engines[this.pairs[pair] & 0xffff];
+
+                    this.random.setSeed(this.seed + g * GOLDEN);
+
+                    // even games are started by the pair's first engine
+                    int winner = (game & 1) == 0 ? play(this.boards[mode], a, b) : -play(this.boards[mode], b, a);
+
+                    res[pair][mode * 3 + 1 - winner]++;
+                }
+
+            return res;
+        }
+
+        // plays a game on the given (empty) board and restores the empty board afterwards
+        // returns 1 := the first engine has won, 0 := draw, -1 := the second engine has won
+        private int play(GameBoard board, Engine first, Engine second)
+        {
+            Engine[] sides = { first, second };
+            int side = 1;
+            int result = 0;
+
+            select(board, first.move(board, this.random));
+
+            while (true)
+            {
+                int move = sides[side].move(board, this.random);
+                int cell = move >>> 4;
+                byte code = board.placeSelected(cell % board.getSize(), cell / board.getSize());
+
+                if (code == 4)
+                {
+                    result = side == 0 ? 1 : -1;
+
+                    break;
+                }
+                else if (code == 5)
+                    break;
+                else if (code != 0)
+                    throw new IllegalStateException(String.format("The engine `%s` has made an illegal placement.",
+                                                                  sides[side].getName()));
+
+                select(board, move);
+                side ^= 1;
+            }
+
+            while (board.unmakeMove())
+            {
+                // restores the empty board in constant time per action
+            }
+
+            return result;
+        }
+
+        // selects the piece of the given move
+        private static void select(GameBoard board, int move)
+        {
+            if (board.selectPiece(move & 0x0f) != 0)
+                throw new IllegalStateException("An engine has selected a piece, which is not inside the bag.");
+        }
+    }
+
+    // places and selects randomly
+    private static class RandomEngine implements Engine
+    {
+        @Override
+        public String getName()
+        {
+            return "random";
+        }
+
+        @Override
+        public int move(GameBoard board, Random random)
+        {
+            int cells = board.getSize() * board.getSize();
+            int cell = 0;
+
+            if (board.getSelected() != null)
+                do
+                    cell = random.nextInt(cells);
+                while (board.isOccupied(cell));
+
+            return (cell << 4) | randomPiece(board.getBagMask(), random);
+        }
+
+        // returns a random piece of the given mask or 0, if it is empty
+        static int randomPiece(int mask, Random random)
+        {
+            if (mask == 0)
+                return 0;
+
+            int rest = mask;
+
+            for (int k = random.nextInt(Integer.bitCount(mask)); k > 0; k--)
+                rest &= rest - 1;
+
+            return Integer.numberOfTrailingZeros(rest);
+        }
+    }
+
+    // wins immediately, if possible, and hands over a piece without an immediate win for the opponent, if possible
+    private static class GreedyEngine implements Engine
+    {
+        private final String name;
+
+
+        GreedyEngine(String name)
+        {
+            super();
+
+            this.name = name;
+        }
+
+        @Override
+        public String getName()
+        {
+            return this.name;
+        }
+
+        @Override
+        public int move(GameBoard board, Random random)
+        {
+            WinTracker tracker = board.getTracker();
+            int bag = board.getBagMask();
+            int threats = tracker.threats();
+
+            if (board.getSelected() == null)
+                return RandomEngine.randomPiece((bag & ~threats) != 0 ? bag & ~threats : bag, random);
+
+            int piece = board.getSelected().value();
+            int cells = board.getSize() * board.getSize();
+
+            if ((threats & (1 << piece)) != 0) // the piece completes an open window
+                for (int cell = 0; cell < cells; cell++)
+                    if (!board.isOccupied(cell) && tracker.wouldWin(cell, piece))
+                        return cell << 4;
+
+            int offset = random.nextInt(cells);
+            int fallback = -1;
+
+            // the cells are visited in a random rotation, so that equal moves are chosen randomly
+            for (int i = 0; i < cells; i++)
+            {
+                int cell = (offset + i) % cells;
+
+                if (board.isOccupied(cell))
+                    continue;
+                else if (bag == 0)
+                    return cell << 4;
+
+                int safe = bag & ~tracker.threatsAfter(cell, piece, threats);
+
+                if (safe != 0)
+                    return (cell << 4) | RandomEngine.randomPiece(safe, random);
+                else if (fallback < 0)
+                    fallback = cell;
+            }
+
+            return (fallback << 4) | RandomEngine.randomPiece(bag, random);
+        }
+    }
+
+    // plays like the greedy engine, but solves endgames exactly
+    private static final class SolverEngine extends GreedyEngine
+    {
+        private final TranspositionTable table = new TranspositionTable(SOLVER_TABLE_BITS);
+        private final Solver solver = new Solver(this.table);
+        private final int pieces;
+
+
+        SolverEngine(String name, int pieces)
+        {
+            super(name);
+
+            this.pieces = pieces;
+        }
+
+        @Override
+        public int move(GameBoard board, Random random)
+        {
+            if ((board.getSelected() == null) || (Integer.bitCount(board.getBagMask()) > this.pieces))
+                return super.move(board, random);
+
+            this.table.clear(); // the moves must not depend on previously played games
+            this.solver.solve(board);
+
+            return (this.solver.getBestCell() << 4) | Math.max(this.solver.getBestPiece(), 0);
+        }
+    }
+}
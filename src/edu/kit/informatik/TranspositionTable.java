@@ -0,0 +1,132 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size, always-replace transposition table for the alpha-beta searches.<br/>
+ * The table can be shared between threads without locking: Every slot stores <code>key ^ data</code> next to the
+ * data, so that torn or concurrent writes are detected as a miss.
+ * @author Unknown6656
+ * @version 1
+ */
+public class TranspositionTable
+{
+    /**
+     * Bound type: The stored score is exact
+     */
+    public static final int EXACT = 0;
+    /**
+     * Bound type: The stored score is a lower bound (fail-high)
+     */
+    public static final int LOWER = 1;
+    /**
+     * Bound type: The stored score is an upper bound (fail-low)
+     */
+    public static final int UPPER = 2;
+    private static final int SCORE_OFFSET = 0x200;
+    private final long[] keys; // key ^ data
+    private final long[] data; // [move:12][flag:2][score + SCORE_OFFSET:10]
+    private final int mask;
+
+
+    /**
+     * Creates a new table with <code>2 ^ bits</code> entries
+     * @param bits Table size as power of two
+     */
+    public TranspositionTable(int bits)
+    {
+        super();
+
+        this.keys = new long[1 << bits];
+        this.data = new long[1 << bits];
+        this.mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Returns the number of entries
+     * @return Table size
+     */
+    public int size()
+    {
+        return this.data.length;
+    }
+
+    /**
+     * Looks up the given position key
+     * @param key Position key
+     * @return The stored entry or 0, if the key is not present
+     */
+    public long probe(long key)
+    {
+        int slot = (int) key & this.mask;
+        long entry = this.data[slot];
+
+        return (entry != 0L) && ((this.keys[slot] ^ entry) == key) ? entry : 0L;
+    }
+
+    /**
+     * Stores the given search result
+     * @param key Position key
+     * @param move Best move (cell * 16 + next piece) or -1
+     * @param flag Bound type (<code>EXACT</code>, <code>LOWER</code> or <code>UPPER</code>)
+     * @param score Root-relative score (see <code>Solver.WIN</code>)
+     * @param ply Distance of the position to the search root
+     */
+    public void store(long key, int move, int flag, int score, int ply)
+    {
+        int slot = (int) key & this.mask;
+        long entry = ((long) (move & 0xfff) << 12)
+                   | ((long) flag << 10)
+                   | ((score > 0 ? score + ply : score < 0 ? score - ply : 0) + SCORE_OFFSET);
+
+        this.data[slot] = entry;
+        this.keys[slot] = key ^ entry;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear()
+    {
+        Arrays.fill(this.data, 0L);
+    }
+
+    /**
+     * Returns the root-relative score of the given entry
+     * @param entry Table entry
+     * @param ply Distance of the position to the search root
+     * @return Score
+     */
+    public static int score(long entry, int ply)
+    {
+        int score = (int) (entry & 0x3ff) - SCORE_OFFSET;
+
+        return score > 0 ? score - ply : score < 0 ? score + ply : 0;
+    }
+
+    /**
+     * Returns the bound type of the given entry
+     * @param entry Table entry
+     * @return Bound type
+     */
+    public static int flag(long entry)
+    {
+        return (int) (entry >>> 10) & 0x03;
+    }
+
+    /**
+     * Returns the best move of the given entry
+     * @param entry Table entry
+     * @return Best move (cell * 16 + next piece) or -1
+     */
+    public static int move(long entry)
+    {
+        int move = (int) (entry >>> 12) & 0xfff;
+
+        return move == 0xfff ? -1 : move;
+    }
+}
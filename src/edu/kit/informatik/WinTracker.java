@@ -0,0 +1,331 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the properties of every 4-cell window (row, column or diagonal segment) of a game board incrementally,
+ * so that a win can be detected in constant time after each placement
+ * @author Unknown6656
+ * @version 1
+ */
+public class WinTracker
+{
+    /* every window is stored as a packed integer:
+     *   bits 00..15 := one nibble per attribute bit, counting the placed pieces which have the attribute set
+     *   bits 16..19 := number of placed pieces inside the window
+     */
+    private static final int COUNT_ONE = 0x10000;
+    private static final int SUMS_MASK = 0xffff;
+    private static final int[] SPREAD = new int[0x10]; // piece value --> attribute nibbles + count
+    private static final char[] COMPLETING = new char[SUMS_MASK + 1]; // sums of 3 pieces --> completing pieces
+    private final Geometry geometry;
+    private final int[] windows; // window --> packed counters
+    private final long[] open; // bit set of the open windows, which hold three pieces and one empty cell
+    private final int[] cellStart; // shared geometry table
+    private final int[] cellWindows; // shared geometry table
+
+
+    static
+    {
+        for (int v = 0x00; v <= 0x0f; v++)
+            SPREAD[v] = COUNT_ONE | (v & 0x01) | ((v & 0x02) << 3) | ((v & 0x04) << 6) | ((v & 0x08) << 9);
+
+        // a separate pass, as the sums of COMPLETING need the SPREAD entries of all piece values
+        for (int v = 0x00; v <= 0x0f; v++)
+            for (int a = 0x00; a <= 0x0f; a++)
+                for (int b = 0x00; b <= 0x0f; b++)
+                {
+                    int sums = (SPREAD[v] + SPREAD[a] + SPREAD[b]) & SUMS_MASK;
+
+                    for (int p = 0x00; p <= 0x0f; p++)
+                        if (isWinning(SPREAD[v] + SPREAD[a] + SPREAD[b] + SPREAD[p]))
+                            COMPLETING[sums] |= 1 << p;
+                }
+    }
+
+    /**
+     * Creates a new tracker for an empty game board with the given geometry
+     * @param geometry Game board geometry
+     */
+    public WinTracker(Geometry geometry)
+    {
+        super();
+
+        this.geometry = geometry;
+        this.windows = new int[geometry.windows()];
+        this.open = new long[(geometry.windows() + 0x3f) >>> 6];
+        this.cellStart = geometry.cellStart();
+        this.cellWindows = geometry.cellWindows();
+    }
+
+    /**
+     * Creates a copy of the given tracker
+     * @param other Tracker to be copied
+     */
+    public WinTracker(WinTracker other)
+    {
+        super();
+
+        this.geometry = other.geometry;
+        this.windows = other.windows.clone();
+        this.open = other.open.clone();
+        this.cellStart = other.cellStart;
+        this.cellWindows = other.cellWindows;
+    }
+
+    /**
+     * Returns the geometry, for which the tracker has been created
+     * @return Geometry
+     */
+    public Geometry getGeometry()
+    {
+        return this.geometry;
+    }
+
+    /**
+     * Returns the number of tracked windows
+     * @return Window count
+     */
+    public int windowCount()
+    {
+        return this.windows.length;
+    }
+
+    /**
+     * Registers the given piece on the given cell and updates all windows touching the cell
+     * @param cell Flat cell index (y * size + x)
+     * @param piece Piece value
+     * @return true, if the placement completes a winning window
+     */
+    public boolean add(int cell, int piece)
+    {
+        int spread = SPREAD[piece & 0x0f];
+        boolean win = false;
+
+        for (int i = this.cellStart[cell], e = this.cellStart[cell + 1]; i < e; i++)
+        {
+            int w = this.cellWindows[i];
+            int packed = this.windows[w] += spread;
+
+            index(w, packed);
+            win |= isWinning(packed);
+        }
+
+        return win;
+    }
+
+    /**
+     * Removes the given piece from the given cell (the exact inverse of <code>add</code>)
+     * @param cell Flat cell index (y * size + x)
+     * @param piece Piece value, which has been added to the cell
+     */
+    public void remove(int cell, int piece)
+    {
+        int spread = SPREAD[piece & 0x0f];
+
+        for (int i = this.cellStart[cell], e = this.cellStart[cell + 1]; i < e; i++)
+        {
+            int w = this.cellWindows[i];
+            index(w, this.windows[w] -= spread);
+        }
+    }
+
+    /**
+     * Returns, whether any window touching the given cell is a winning window
+     * @param cell Flat cell index (y * size + x)
+     * @return Winner
+     */
+    public boolean isWin(int cell)
+    {
+        for (int i = this.cellStart[cell], e = this.cellStart[cell + 1]; i < e; i++)
+            if (isWinning(this.windows[this.cellWindows[i]]))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Returns, whether placing the given piece on the given (empty) cell would complete a winning window.<br/>
+     * The tracker is not modified.
+     * @param cell Flat cell index (y * size + x)
+     * @param piece Piece value
+     * @return true, if the placement would win
+     */
+    public boolean wouldWin(int cell, int piece)
+    {
+        int spread = SPREAD[piece & 0x0f];
+
+        for (int i = this.cellStart[cell], e = this.cellStart[cell + 1]; i < e; i++)
+            if (isWinning(this.windows[this.cellWindows[i]] + spread))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Clears all windows
+     */
+    public void clear()
+    {
+        Arrays.fill(this.windows, 0);
+        Arrays.fill(this.open, 0L);
+    }
+
+    /**
+     * Returns the number of pieces inside the given window
+     * @param window Window index
+     * @return Piece count
+     */
+    public int count(int window)
+    {
+        return this.windows[window] >>> 16;
+    }
+
+    /**
+     * Returns the AND-mask over the attribute bits of all pieces inside the given window
+     * @param window Window index
+     * @return Attributes set on every piece (0x0f for an empty window)
+     */
+    public int andSet(int window)
+    {
+        int packed = this.windows[window];
+        int cnt = packed >>> 16;
+        int res = 0x00;
+
+        for (int bit = 0; bit < 4; bit++)
+            if (((packed >>> (bit << 2)) & 0x0f) == cnt)
+                res |= 1 << bit;
+
+        return res;
+    }
+
+    /**
+     * Returns the AND-mask over the inverted attribute bits of all pieces inside the given window
+     * @param window Window index
+     * @return Attributes cleared on every piece (0x0f for an empty window)
+     */
+    public int andClear(int window)
+    {
+        int packed = this.windows[window];
+        int res = 0x00;
+
+        for (int bit = 0; bit < 4; bit++)
+            if (((packed >>> (bit << 2)) & 0x0f) == 0)
+                res |= 1 << bit;
+
+        return res;
+    }
+
+    /**
+     * Returns the number of open windows, which hold three pieces and one empty cell
+     * @return Open window count
+     */
+    public int openCount()
+    {
+        int res = 0;
+
+        for (long bits : this.open)
+            res += Long.bitCount(bits);
+
+        return res;
+    }
+
+    /**
+     * Returns all pieces, which would complete a winning window, if they were placed on the empty cell of any window
+     * holding three pieces. Only the open windows are visited, which are indexed by every placement.
+     * @return Bit mask of piece values (bit index := piece value)
+     */
+    public int threats()
+    {
+        int res = 0x0000;
+
+        for (int i = 0; i < this.open.length; i++)
+            for (long bits = this.open[i]; bits != 0L; bits &= bits - 1)
+                res |= COMPLETING[this.windows[(i << 6) | Long.numberOfTrailingZeros(bits)] & SUMS_MASK];
+
+        return res;
+    }
+
+    /**
+     * Returns all pieces, which would complete a winning window after the given piece has been placed on the given
+     * empty cell (see <code>threats()</code>). The tracker is not modified.
+     * @param cell Flat cell index (y * size + x)
+     * @param piece Piece value
+     * @param threats The result of <code>threats()</code> for the current state
+     * @return Bit mask of piece values (bit index := piece value)
+     */
+    public int threatsAfter(int cell, int piece, int threats)
+    {
+        int spread = SPREAD[piece & 0x0f];
+        int res = threats;
+        boolean filled = false;
+
+        for (int i = this.cellStart[cell], e = this.cellStart[cell + 1]; i < e; i++)
+        {
+            int packed = this.windows[this.cellWindows[i]];
+
+            filled |= (packed >>> 16) == Geometry.LENGTH - 1;
+            res |= completing(packed + spread);
+        }
+
+        if (filled) // the cell has been the last empty cell of a window: its threat has to be removed
+        {
+            res = 0x0000;
+
+            for (int i = 0; i < this.open.length; i++)
+                for (long bits = this.open[i]; bits != 0L; bits &= bits - 1)
+                {
+                    int w = (i << 6) | Long.numberOfTrailingZeros(bits);
+
+                    if (!touches(w, cell))
+                        res |= COMPLETING[this.windows[w] & SUMS_MASK];
+                }
+
+            for (int i = this.cellStart[cell], e = this.cellStart[cell + 1]; i < e; i++)
+                res |= completing(this.windows[this.cellWindows[i]] + spread);
+        }
+
+        return res;
+    }
+
+    // marks the given window as open, if it holds three pieces, and as closed otherwise
+    private void index(int window, int packed)
+    {
+        long bit = 1L << window;
+        long open = (packed >>> 16) == Geometry.LENGTH - 1 ? bit : 0L;
+
+        this.open[window >>> 6] = (this.open[window >>> 6] & ~bit) | open;
+    }
+
+    // returns, whether the given window contains the given cell
+    private boolean touches(int window, int cell)
+    {
+        for (int i = this.cellStart[cell], e = this.cellStart[cell + 1]; i < e; i++)
+            if (this.cellWindows[i] == window)
+                return true;
+
+        return false;
+    }
+
+    // returns the pieces, which would complete the given packed window, if it holds three pieces
+    private static int completing(int packed)
+    {
+        return (packed >>> 16) == Geometry.LENGTH - 1 ? COMPLETING[packed & SUMS_MASK] : 0x0000;
+    }
+
+    // returns, whether the given packed window holds four pieces sharing at least one (set or cleared) attribute
+    private static boolean isWinning(int packed)
+    {
+        if ((packed >>> 16) != Geometry.LENGTH)
+            return false;
+
+        int sums = packed & SUMS_MASK;
+
+        return ((sums & 0x4444) != 0) // an attribute is set on all four pieces
+            || (((sums | (sums >>> 1) | (sums >>> 2)) & 0x1111) != 0x1111); // an attribute is cleared on all four
+    }
+}
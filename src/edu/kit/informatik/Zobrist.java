@@ -0,0 +1,114 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Provides the (deterministic) random keys used for the 64-bit Zobrist hash of a game board
+ * @author Unknown6656
+ * @version 1
+ */
+public final class Zobrist
+{
+    private static final long SEED = 0x5eed6656L;
+    private static final long[] BAG = new long[0x10];
+    private static final long[] SELECTED = new long[0x10];
+    private static final long PLAYER;
+    private static final ConcurrentMap<Integer, long[]> CELLS = new ConcurrentHashMap<Integer, long[]>();
+
+
+    static
+    {
+        Random rnd = new Random(SEED);
+
+        for (int i = 0x00; i <= 0x0f; i++)
+        {
+            BAG[i] = rnd.nextLong();
+            SELECTED[i] = rnd.nextLong();
+        }
+
+        PLAYER = rnd.nextLong();
+    }
+
+    /**
+     * private default constructor
+     */
+    private Zobrist()
+    {
+    }
+
+    /**
+     * Returns the key table for pieces on cells: The key of piece <code>p</code> on cell <code>c</code> is stored at
+     * the index <code>c * 16 + p</code>.<br/>
+     * The returned array is shared and must not be modified.
+     * @param cells Number of cells of the game board
+     * @return Key table
+     */
+    public static long[] cells(int cells)
+    {
+        long[] res = CELLS.get(cells);
+
+        if (res == null)
+        {
+            Random rnd = new Random(SEED ^ cells);
+
+            res = new long[cells * 0x10];
+
+            for (int i = 0; i < res.length; i++)
+                res[i] = rnd.nextLong();
+
+            CELLS.putIfAbsent(cells, res);
+            res = CELLS.get(cells);
+        }
+
+        return res;
+    }
+
+    /**
+     * Returns the key of a piece, which is still inside the bag
+     * @param piece Piece value
+     * @return Key
+     */
+    public static long bag(int piece)
+    {
+        return BAG[piece];
+    }
+
+    /**
+     * Returns the key of the selected piece
+     * @param piece Piece value
+     * @return Key
+     */
+    public static long selected(int piece)
+    {
+        return SELECTED[piece];
+    }
+
+    /**
+     * Returns the key, which is toggled when the second player (<code>player == 1</code>) is to move
+     * @return Key
+     */
+    public static long player()
+    {
+        return PLAYER;
+    }
+
+    /**
+     * Returns the hash of an empty board, where all pieces are inside the bag and the first player is to move
+     * @return Initial hash
+     */
+    public static long initial()
+    {
+        long res = 0L;
+
+        for (long key : BAG)
+            res ^= key;
+
+        return res;
+    }
+}
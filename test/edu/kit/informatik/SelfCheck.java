@@ -0,0 +1,633 @@
+/*
+ * COPYRIGHT (C) 2016, UNKNOWN6656
+ */
+
+package edu.kit.informatik;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cross-checks the incremental game board structures against brute force and known counts. It is run by the Gradle
+ * task `selfCheck` (part of `check`) and exits with the status 1, if any check fails.
+ * @author Unknown6656
+ * @version 1
+ */
+public final class SelfCheck
+{
+    private static final int GAMES = 200;
+    private static final long[] PERFT = { 16, 576, 8640, 302400, 4233600 }; // empty 6x6 board, depth 1..5
+    private static final int POSITIONS = 12; // solved positions per board mode
+    private static int failures;
+
+
+    /**
+     * private default constructor
+     */
+    private SelfCheck()
+    {
+    }
+
+    /**
+     * The self check's entry point
+     * @param args Command line arguments (unused)
+     */
+    public static void main(String[] args)
+    {
+        checkTorusCoordinates();
+        checkProtocol(false);
+        checkProtocol(true);
+        checkThreats(false);
+        checkThreats(true);
+        checkPerft(false);
+        checkPerft(true);
+        checkSolvers(false);
+        checkSolvers(true);
+        checkCanonicalKeys(false);
+        checkCanonicalKeys(true);
+        checkHistory(false);
+        checkHistory(true);
+        checkSnapshots(false);
+        checkSnapshots(true);
+        checkArchive();
+
+        Final02.out("%d failures", failures);
+
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // checks the modulus of negative numbers (including multiples of the size) and the torus placements using them
+    private static void checkTorusCoordinates()
+    {
+        for (int num = -0x30; num <= 0x30; num++)
+            expect(Final02.mod(num, 6) == (num % 6 + 6) % 6, "mod(%d, 6) = %d", num, Final02.mod(num, 6));
+
+        GameBoard game = new GameBoard(6, true);
+        int[][] positions = { { -6, 0 }, { 0, -6 }, { -12, -18 }, { 6, 12 }, { -7, -1 } };
+        int[][] cells = { { 0, 0 }, { 0, 0 }, { 0, 0 }, { 0, 0 }, { 5, 5 } };
+
+        for (int i = 0; i < positions.length; i++)
+        {
+            game.reset();
+            game.setPlayer((byte) 1);
+            game.selectPiece(3);
+
+            byte code = game.placeSelected(positions[i][0], positions[i][1]);
+
+            expect((code == 0) && (game.getPiece(cells[i][0], cells[i][1]) != null), "torus place %d;%d: %d",
+                   positions[i][1], positions[i][0], code);
+        }
+    }
+
+    // executes the same transcript through the byte path (batched by BufferedOutput) and through the string path
+    // (printed like Terminal.printLine) and compares both outputs byte by byte. Out-of-range coordinates and
+    // malformed commands have to be answered by error messages, never by an exception.
+    private static void checkProtocol(boolean torus)
+    {
+        Charset charset = Charset.defaultCharset();
+        ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        ByteArrayOutputStream slow = new ByteArrayOutputStream();
+        final PrintStream print = new PrintStream(slow, true);
+        BufferedOutput buffered = new BufferedOutput(fast);
+        Session bytes = new Session(torus, buffered);
+        Session strings = new Session(torus, new Output()
+        {
+            @Override
+            public void printLine(CharSequence line)
+            {
+                print.println(line);
+            }
+        });
+
+        for (String line : transcript(new Random(torus ? 3 : 2)))
+        {
+            byte[] raw = line.getBytes(charset);
+
+            try
+            {
+                bytes.execute(raw, 0, raw.length, charset);
+                strings.execute(line);
+            }
+            catch (RuntimeException ex)
+            {
+                expect(false, "`%s` (torus: %b) threw %s", line, torus, ex);
+            }
+        }
+
+        buffered.flush();
+
+        expect(Arrays.equals(fast.toByteArray(), slow.toByteArray()), "the outputs differ (torus: %b)", torus);
+        expect(!new String(fast.toByteArray(), charset).contains("internal error"),
+               "internal error (torus: %b)", torus);
+    }
+
+    // returns a transcript of malformed commands, extreme coordinates and random games with wrapping coordinates
+    private static List<String> transcript(Random random)
+    {
+        List<String> res = new ArrayList<String>(Arrays.asList(
+            "bag", "select 16", "select -1", "select x", "place 0;0", "select 3", "select 4", "place -6;0",
+            "select 3", "place 0;-6", "place 0;-12", "place 2147483647;-2147483648", "place 99999999999;0",
+            "place 1", "place ;", "place 1;", "place a;b", "rowprint -6", "colprint -2147483648", "rowprint 6",
+            "colprint 12", "rowprint", "  SELECT 5  ", "Place 1;1", "threats", "safe", "undo", "redo", "unknown",
+            "", "print"));
+
+        for (int g = 0; g < 0x20; g++)
+            for (int i = 0; i < 0x30; i++)
+            {
+                res.add("select " + random.nextInt(0x10));
+                res.add("place " + (random.nextInt(27) - 13) + ";" + (random.nextInt(27) - 13));
+
+                if (random.nextInt(8) == 0)
+                    res.add(random.nextBoolean() ? "undo" : "rowprint " + (random.nextInt(27) - 13));
+            }
+
+        return res;
+    }
+
+    // compares threats() and threatsAfter() against wouldWin on all empty cells during random games
+    private static void checkThreats(boolean torus)
+    {
+        Random random = new Random(torus ? 1 : 0);
+        GameBoard game = new GameBoard(6, torus);
+
+        for (int g = 0; g < GAMES; g++)
+        {
+            game.reset();
+            game.setPlayer((byte) 1);
+
+            while (!game.isFinished() && (game.getBagMask() != 0))
+            {
+                WinTracker tracker = game.getTracker();
+                int threats = tracker.threats();
+
+                expect(threats == bruteThreats(game, tracker, -1), "threats() on %s", game.print());
+
+                for (int c = 0; c < 36; c++)
+                    if (game.getPiece(c % 6, c / 6) == null)
+                        for (int p = 0x00; p <= 0x0f; p++)
+                            if (game.isInBag(p) && !tracker.wouldWin(c, p))
+                            {
+                                WinTracker after = new WinTracker(tracker);
+
+                                after.add(c, p);
+
+                                expect(tracker.threatsAfter(c, p, threats) == bruteThreats(game, after, c),
+                                       "threatsAfter(%d, %d) on %s", c, p, game.print());
+                            }
+
+                int[] bag = pieces(game.getBagMask());
+                int cell;
+
+                do
+                    cell = random.nextInt(36);
+                while (game.getPiece(cell % 6, cell / 6) != null);
+
+                game.selectPiece(bag[random.nextInt(bag.length)]);
+                game.placeSelected(cell % 6, cell / 6);
+            }
+        }
+    }
+
+    // compares the serial and the parallel perft counts of the empty board against the known values
+    private static void checkPerft(boolean torus)
+    {
+        GameBoard game = new GameBoard(6, torus);
+
+        game.setPlayer((byte) 1);
+
+        for (int threads = 1; threads <= 2; threads++)
+        {
+            Perft counter = new Perft(threads);
+
+            try
+            {
+                for (int depth = 1; depth <= PERFT.length; depth++)
+                {
+                    counter.run(game, depth);
+
+                    expect((counter.getSequences() == PERFT[depth - 1]) && (counter.getWins() == 0)
+                         && (counter.getDraws() == 0), "perft %d (%d threads, torus: %b): %d sequences", depth,
+                           threads, torus, counter.getSequences());
+                }
+            }
+            finally
+            {
+                counter.shutdown();
+            }
+        }
+    }
+
+    // compares the values and scores of the sequential and the parallel solver on random positions with 6 pieces left
+    private static void checkSolvers(boolean torus)
+    {
+        Random random = new Random(torus ? 5 : 4);
+        Solver solver = new Solver();
+        ParallelSolver parallel = new ParallelSolver(2);
+
+        try
+        {
+            for (int i = 0; i < POSITIONS; i++)
+            {
+                GameBoard game;
+
+                do
+                    game = randomGame(random, torus, 10);
+                while (game.isFinished());
+
+                int value = solver.solve(game);
+                int parallelValue = parallel.solve(game);
+
+                expect((value == parallelValue) && (solver.getScore() == parallel.getScore()),
+                       "solve: %d (score %d), parallel: %d (score %d) on %s", value, solver.getScore(),
+                       parallelValue, parallel.getScore(), game.print());
+            }
+        }
+        finally
+        {
+            parallel.shutdown();
+        }
+    }
+
+    // compares the canonical keys of random positions with the keys of their transformations: a board symmetry, a
+    // translation (torus only), a permutation of the attribute bits and a complement of the attributes
+    private static void checkCanonicalKeys(boolean torus)
+    {
+        Random random = new Random(torus ? 7 : 6);
+        Canonicalizer canonicalizer = new Canonicalizer(Geometry.get(6, torus));
+
+        for (int g = 0; g < GAMES; g++)
+        {
+            int[] values = pieces(random.nextInt(0x10000));
+            int selected = random.nextInt(0x11) - 1;
+            int symmetry = random.nextInt(8);
+            int dx = torus ? random.nextInt(6) : 0;
+            int dy = torus ? random.nextInt(6) : 0;
+            int[] bits = { 0, 1, 2, 3 };
+            int complement = random.nextInt(0x10);
+            GameBoard game = new GameBoard(6, torus);
+            GameBoard image = new GameBoard(6, torus);
+
+            for (int i = bits.length - 1; i > 0; i--)
+            {
+                int j = random.nextInt(i + 1);
+                int bit = bits[i];
+
+                bits[i] = bits[j];
+                bits[j] = bit;
+            }
+
+            for (int value : values)
+            {
+                int cell;
+
+                do
+                    cell = random.nextInt(36);
+                while (game.isOccupied(cell));
+
+                int x = cell % 6;
+                int y = cell / 6;
+                int[][] xy = { { x, y }, { 5 - x, y }, { x, 5 - y }, { 5 - x, 5 - y },
+                               { y, x }, { 5 - y, x }, { y, 5 - x }, { 5 - y, 5 - x } };
+
+                game.put(cell, value);
+                image.put(((xy[symmetry][1] + dy) % 6) * 6 + (xy[symmetry][0] + dx) % 6,
+                          permute(value, bits) ^ complement);
+            }
+
+            long key = canonicalizer.key(game, selected);
+            long imageKey = canonicalizer.key(image, selected < 0 ? -1 : permute(selected, bits) ^ complement);
+
+            expect(key == imageKey, "canonical key (symmetry %d, shift %d;%d, bits %s, complement %d) of %s",
+                   symmetry, dy, dx, Arrays.toString(bits), complement, game.print());
+        }
+    }
+
+    // moves the attribute bit i of the given piece value to the bit bits[i]
+    private static int permute(int value, int[] bits)
+    {
+        int res = 0;
+
+        for (int i = 0; i < bits.length; i++)
+            if ((value & (1 << i)) != 0)
+                res |= 1 << bits[i];
+
+        return res;
+    }
+
+    // compares the state of a board after random moves, single actions, undos and redos with a board, which replays
+    // the remaining placements from scratch (a won or drawn game is only undone or redone, as its last piece stays
+    // selected)
+    private static void checkHistory(boolean torus)
+    {
+        Random random = new Random(torus ? 9 : 8);
+        GameBoard game = new GameBoard(6, torus);
+        int[] placements = new int[36];
+
+        for (int g = 0; g < GAMES; g++)
+        {
+            game.reset();
+            game.setPlayer((byte) 1);
+
+            for (int i = 0; i < 0x40; i++)
+            {
+                int[] bag = pieces(game.getBagMask());
+                int cell = random.nextInt(36);
+                int action = random.nextInt(game.isFinished() || (bag.length == 0) ? 2 : 6);
+
+                if (action == 0)
+                    game.unmakeMove();
+                else if (action == 1)
+                    game.redoMove();
+                else if (action == 2)
+                    game.selectPiece(bag[random.nextInt(bag.length)]);
+                else if (action == 3)
+                    game.placeSelected(cell % 6, cell / 6);
+                else
+                    game.makeMove(bag[random.nextInt(bag.length)], cell % 6, cell / 6);
+
+                GameBoard fresh = new GameBoard(6, torus);
+                int count = game.getPlacements(placements);
+
+                fresh.setPlayer((byte) 1);
+
+                for (int n = 0; n < count; n++)
+                    fresh.makeMove(placements[n] & 0x0f, (placements[n] >>> 4) % 6, (placements[n] >>> 4) / 6);
+
+                if (game.getSelected() != null)
+                    fresh.selectPiece(game.getSelected().value());
+
+                expect((game.getHash() == fresh.getHash()) && game.print().equals(fresh.print())
+                     && (game.getBagMask() == fresh.getBagMask()) && (game.getPlayer() == fresh.getPlayer())
+                     && (game.getRound() == fresh.getRound()) && (game.isFinished() == fresh.isFinished())
+                     && (game.getTracker().threats() == fresh.getTracker().threats()),
+                       "history (torus: %b): hash %x, rebuilt %x on %s", torus, game.getHash(), fresh.getHash(),
+                       game.print());
+            }
+        }
+    }
+
+    // saves and loads snapshots of random games (into a board of the other mode), checks that a single flipped bit is
+    // rejected without touching the board and that the session only accepts plain snapshot names
+    private static void checkSnapshots(boolean torus)
+    {
+        Random random = new Random(torus ? 11 : 10);
+        Path dir = null;
+
+        try
+        {
+            dir = Files.createTempDirectory("selfcheck");
+
+            Path file = dir.resolve("game");
+
+            for (int g = 0; g < GAMES; g++)
+            {
+                GameBoard game = randomGame(random, torus, random.nextInt(17));
+                GameBoard copy = new GameBoard(6, !torus);
+
+                if (!game.isFinished() && (game.getBagMask() != 0) && random.nextBoolean())
+                    game.selectPiece(pieces(game.getBagMask())[0]);
+
+                Snapshot.save(game, file);
+                Snapshot.load(copy, file);
+
+                expect(sameState(game, copy) && copy.isRestored(), "snapshot (torus: %b) of %s", torus, game.print());
+
+                byte[] data = Files.readAllBytes(file);
+                int index = random.nextInt(data.length);
+
+                data[index] ^= 1 << random.nextInt(8);
+                Files.write(file, data);
+
+                try
+                {
+                    Snapshot.load(copy, file);
+                    expect(false, "corrupt snapshot (torus: %b, byte %d) accepted", torus, index);
+                }
+                catch (IOException ex)
+                {
+                    expect(sameState(game, copy), "corrupt snapshot (torus: %b) changed the board", torus);
+                }
+            }
+
+            final List<String> replies = new ArrayList<String>();
+            Session session = new Session(torus, new Output()
+            {
+                @Override
+                public void printLine(CharSequence line)
+                {
+                    replies.add(line.toString());
+                }
+            });
+            String[] commands = { "save ../game", "save " + file.toAbsolutePath(), "load ..", "load .game", "save",
+                                  "save game-2.qsn", "load game-2.qsn" };
+
+            session.setSnapshotDirectory(dir);
+
+            for (String command : commands)
+                session.execute(command);
+
+            for (int i = 0; i < commands.length; i++)
+                expect(replies.get(i).startsWith(i < 5 ? "Error, " : "OK"), "`%s`: %s", commands[i], replies.get(i));
+        }
+        catch (IOException ex)
+        {
+            expect(false, "snapshot (torus: %b): %s", torus, ex);
+        }
+        finally
+        {
+            delete(dir);
+        }
+    }
+
+    // writes random games of both modes into an archive (with two writers, the second one appends) and compares the
+    // records read back, afterwards checks that a session does not archive a game restored by `load`
+    private static void checkArchive()
+    {
+        Random random = new Random(12);
+        List<GameBoard> games = new ArrayList<GameBoard>();
+        int[] placements = new int[36];
+        Path dir = null;
+
+        for (int g = 0; g < GAMES; g++)
+            games.add(randomGame(random, random.nextBoolean(), random.nextInt(17)));
+
+        try
+        {
+            dir = Files.createTempDirectory("selfcheck");
+
+            Path file = dir.resolve("games.qga");
+
+            for (int part = 0; part < 2; part++)
+                try (GameRecordWriter writer = GameRecordWriter.open(file))
+                {
+                    for (GameBoard game : games.subList(part * GAMES / 2, (part + 1) * GAMES / 2))
+                        writer.write(game);
+                }
+
+            try (GameRecordReader reader = new GameRecordReader(file))
+            {
+                for (GameBoard game : games)
+                {
+                    int count = game.getPlacements(placements);
+                    int result = GameRecordReader.RESULT_NONE;
+
+                    if (game.isFinished())
+                        result = count % 2 == 1 ? GameRecordReader.RESULT_FIRST : GameRecordReader.RESULT_SECOND;
+                    else if (game.getBagMask() == 0)
+                        result = GameRecordReader.RESULT_DRAW;
+
+                    boolean same = reader.next() && (reader.getSize() == 6) && (reader.isTorus() == game.isTorus())
+                                && (reader.getResult() == result) && (reader.getPlacementCount() == count);
+
+                    for (int i = 0; same && (i < count); i++)
+                        same = reader.getPlacement(i) == placements[i];
+
+                    expect(same, "archive record %d of %s", reader.getGames(), game.print());
+                }
+
+                expect(!reader.next(), "archive: more than %d records", GAMES);
+            }
+
+            String[] moves = { "select 0", "place 0;0", "select 1", "place 0;1", "select 2", "place 0;2", "select 3",
+                               "place 0;3" };
+            Output ignore = new Output()
+            {
+                @Override
+                public void printLine(CharSequence line)
+                {
+                    // the replies are not checked
+                }
+            };
+
+            try (GameRecordWriter writer = GameRecordWriter.open(dir.resolve("sessions.qga")))
+            {
+                Session played = new Session(false, ignore);
+                Session restored = new Session(false, ignore);
+
+                played.setRecorder(writer);
+                restored.setRecorder(writer);
+                restored.setSnapshotDirectory(dir);
+
+                for (int i = 0; i < moves.length; i++)
+                {
+                    played.execute(moves[i]);
+                    restored.execute(moves[i]);
+
+                    if (i == 1)
+                    {
+                        restored.execute("save session");
+                        restored.execute("load session");
+                    }
+                }
+
+                expect(played.getBoard().isFinished() && restored.getBoard().isFinished() && (writer.getGames() == 1),
+                       "archive: %d games recorded instead of 1", writer.getGames());
+            }
+        }
+        catch (IOException ex)
+        {
+            expect(false, "archive: %s", ex);
+        }
+        finally
+        {
+            delete(dir);
+        }
+    }
+
+    // returns, whether both boards have the same state (except for the move history)
+    private static boolean sameState(GameBoard a, GameBoard b)
+    {
+        return (a.getHash() == b.getHash()) && a.print().equals(b.print()) && (a.isTorus() == b.isTorus())
+            && (a.getBagMask() == b.getBagMask()) && (a.getSelected() == b.getSelected())
+            && (a.getPlayer() == b.getPlayer()) && (a.getRound() == b.getRound())
+            && (a.isFinished() == b.isFinished()) && (a.getTracker().threats() == b.getTracker().threats());
+    }
+
+    // deletes the given directory with all its files (ignoring errors)
+    private static void delete(Path dir)
+    {
+        if (dir != null)
+            try
+            {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+                {
+                    for (Path file : files)
+                        Files.delete(file);
+                }
+
+                Files.delete(dir);
+            }
+            catch (IOException ex)
+            {
+                Final02.out("Warning, %s could not be deleted: %s", dir, ex.getMessage());
+            }
+    }
+
+    // returns a new game board after the given number of random moves (less, if the game has been won before)
+    private static GameBoard randomGame(Random random, boolean torus, int moves)
+    {
+        GameBoard game = new GameBoard(6, torus);
+
+        game.setPlayer((byte) 1);
+
+        for (int i = 0; (i < moves) && !game.isFinished(); i++)
+        {
+            int[] bag = pieces(game.getBagMask());
+            int cell;
+
+            do
+                cell = random.nextInt(36);
+            while (game.getPiece(cell % 6, cell / 6) != null);
+
+            game.makeMove(bag[random.nextInt(bag.length)], cell % 6, cell / 6);
+        }
+
+        return game;
+    }
+
+    // returns the pieces, which complete a window on any empty cell of the game board (except the given cell)
+    private static int bruteThreats(GameBoard game, WinTracker tracker, int except)
+    {
+        int res = 0x0000;
+
+        for (int c = 0; c < 36; c++)
+            if ((c != except) && (game.getPiece(c % 6, c / 6) == null))
+                for (int p = 0x00; p <= 0x0f; p++)
+                    if (tracker.wouldWin(c, p))
+                        res |= 1 << p;
+
+        return res;
+    }
+
+    // returns the piece values of the given bit mask
+    private static int[] pieces(int mask)
+    {
+        int[] res = new int[Integer.bitCount(mask)];
+        int i = 0;
+
+        for (int rest = mask; rest != 0; rest &= rest - 1)
+            res[i++] = Integer.numberOfTrailingZeros(rest);
+
+        return res;
+    }
+
+    // records a failure with the given formatted message, if the given condition does not hold
+    private static void expect(boolean condition, String msg, Object... args)
+    {
+        if (!condition)
+        {
+            Final02.out("Failed: " + msg, args);
+
+            failures++;
+        }
+    }
+}